@@ -12,14 +12,19 @@ DROP TABLE COMMENTAIRES CASCADE CONSTRAINTS;
 DROP TABLE LIKES CASCADE CONSTRAINTS;
 DROP TABLE NOTES CASCADE CONSTRAINTS;
 DROP TABLE CRITERES_EVALUATION CASCADE CONSTRAINTS;
+DROP TABLE STATS_RESTAURANTS CASCADE CONSTRAINTS;
+DROP TABLE STATS_NOTES CASCADE CONSTRAINTS;
 
-CREATE TABLE RESTAURANTS (numero number(10) NOT NULL, nom varchar2(100) NOT NULL, adresse varchar2(100) NOT NULL, description clob, site_web varchar2(100), fk_type number(10) NOT NULL, fk_vill number(10) NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE TYPES_GASTRONOMIQUES (numero number(10) NOT NULL, libelle varchar2(100) NOT NULL UNIQUE, description clob NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE VILLES (numero number(10) NOT NULL, code_postal varchar2(100) NOT NULL, nom_ville varchar2(100) NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE COMMENTAIRES (numero number(10) NOT NULL, date_eval date NOT NULL, commentaire clob NOT NULL, nom_utilisateur varchar2(100) NOT NULL, fk_rest number(10), PRIMARY KEY (numero));
-CREATE TABLE LIKES (numero number(10) NOT NULL, appreciation char(1) NOT NULL, date_eval date NOT NULL, adresse_ip varchar2(100) NOT NULL, fk_rest number(10) NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE RESTAURANTS (numero number(10) NOT NULL, nom varchar2(100) NOT NULL, adresse varchar2(100) NOT NULL, description clob, site_web varchar2(100), fk_type number(10) NOT NULL, fk_vill number(10) NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE TYPES_GASTRONOMIQUES (numero number(10) NOT NULL, libelle varchar2(100) NOT NULL UNIQUE, description clob NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE VILLES (numero number(10) NOT NULL, code_postal varchar2(100) NOT NULL, nom_ville varchar2(100) NOT NULL, nom_ville_normalise varchar2(100) NOT NULL UNIQUE, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE COMMENTAIRES (numero number(10) NOT NULL, date_eval date NOT NULL, commentaire clob NOT NULL, nom_utilisateur varchar2(100) NOT NULL, fk_rest number(10), version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE LIKES (numero number(10) NOT NULL, appreciation char(1) NOT NULL, date_eval date NOT NULL, adresse_ip varchar2(100) NOT NULL, fk_rest number(10) NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
 CREATE TABLE NOTES (numero number(10) NOT NULL, note number(3) NOT NULL, fk_comm number(10) NOT NULL, fk_crit number(10) NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE CRITERES_EVALUATION (numero number(10) NOT NULL, nom varchar2(100) NOT NULL UNIQUE, description varchar2(512), PRIMARY KEY (numero));
+CREATE TABLE CRITERES_EVALUATION (numero number(10) NOT NULL, nom varchar2(100) NOT NULL UNIQUE, description varchar2(512), version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+-- Compteurs d'valuations par restaurant et par critre, tenus  jour  chaque valuation (reconstruits depuis l'application)
+CREATE TABLE STATS_RESTAURANTS (fk_rest number(10) NOT NULL, nb_likes number(10) DEFAULT 0 NOT NULL, nb_dislikes number(10) DEFAULT 0 NOT NULL, nb_evaluations number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (fk_rest));
+CREATE TABLE STATS_NOTES (fk_rest number(10) NOT NULL, fk_crit number(10) NOT NULL, somme_notes number(12) DEFAULT 0 NOT NULL, nb_notes number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (fk_rest, fk_crit));
 
 ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_TYPE FOREIGN KEY (fk_type) REFERENCES TYPES_GASTRONOMIQUES (numero);
 ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_VILL FOREIGN KEY (fk_vill) REFERENCES VILLES (numero);
@@ -27,13 +32,35 @@ ALTER TABLE COMMENTAIRES ADD CONSTRAINT FK_COMM_REST FOREIGN KEY (fk_rest) REFER
 ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_COMM FOREIGN KEY (fk_comm) REFERENCES COMMENTAIRES (numero);
 ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_CRIT FOREIGN KEY (fk_crit) REFERENCES CRITERES_EVALUATION (numero);
 ALTER TABLE LIKES ADD CONSTRAINT FK_LIKE_REST FOREIGN KEY (fk_rest) REFERENCES RESTAURANTS (numero);
+ALTER TABLE STATS_RESTAURANTS ADD CONSTRAINT FK_STAT_REST FOREIGN KEY (fk_rest) REFERENCES RESTAURANTS (numero);
+ALTER TABLE STATS_NOTES ADD CONSTRAINT FK_STNO_REST FOREIGN KEY (fk_rest) REFERENCES RESTAURANTS (numero);
+ALTER TABLE STATS_NOTES ADD CONSTRAINT FK_STNO_CRIT FOREIGN KEY (fk_crit) REFERENCES CRITERES_EVALUATION (numero);
 
-CREATE SEQUENCE SEQ_RESTAURANTS;
-CREATE SEQUENCE SEQ_TYPES_GASTRONOMIQUES;
-CREATE SEQUENCE SEQ_VILLES;
-CREATE SEQUENCE SEQ_EVAL;
-CREATE SEQUENCE SEQ_NOTES;
-CREATE SEQUENCE SEQ_CRITERES_EVALUATION;
+-- Index des cls trangres : les recherches par ville ou par type et le chargement des valuations
+-- d'un restaurant suivent ces jointures
+CREATE INDEX IX_REST_VILL ON RESTAURANTS (fk_vill);
+CREATE INDEX IX_REST_TYPE ON RESTAURANTS (fk_type);
+CREATE INDEX IX_COMM_REST ON COMMENTAIRES (fk_rest);
+CREATE INDEX IX_LIKE_REST ON LIKES (fk_rest);
+CREATE INDEX IX_NOTE_COMM ON NOTES (fk_comm);
+CREATE INDEX IX_NOTE_CRIT ON NOTES (fk_crit);
+-- Index fonctionnels des recherches insensibles  la casse par prfixe (LOWER(...) LIKE LOWER('debut%')) :
+-- parcours d'intervalle pour les recherches par ville et par type. La recherche par nom de restaurant porte sur
+-- une partie du nom ('%motif%') : un index B-tree ne peut pas y servir de parcours d'intervalle, au mieux
+-- de parcours complet plus lger que la table (Oracle Text serait ncessaire pour une recherche indexe)
+CREATE INDEX IX_REST_NOM_LOWER ON RESTAURANTS (LOWER(nom));
+CREATE INDEX IX_VILL_NOM_LOWER ON VILLES (LOWER(nom_ville));
+CREATE INDEX IX_TYPE_LIBELLE_LOWER ON TYPES_GASTRONOMIQUES (LOWER(libelle));
+-- Un seul like par adresse IP, par restaurant et par jour (complt par l'index en mmoire de l'application)
+CREATE UNIQUE INDEX UX_LIKE_IP_REST_JOUR ON LIKES (adresse_ip, fk_rest, TRUNC(date_eval));
+
+-- Le pas des squences correspond  l'allocationSize des @SequenceGenerator (optimiseur pooled d'Hibernate)
+CREATE SEQUENCE SEQ_RESTAURANTS INCREMENT BY 50;
+CREATE SEQUENCE SEQ_TYPES_GASTRONOMIQUES INCREMENT BY 50;
+CREATE SEQUENCE SEQ_VILLES INCREMENT BY 50;
+CREATE SEQUENCE SEQ_EVAL INCREMENT BY 50;
+CREATE SEQUENCE SEQ_NOTES INCREMENT BY 50;
+CREATE SEQUENCE SEQ_CRITERES_EVALUATION INCREMENT BY 50;
 
 CREATE OR REPLACE TRIGGER TR_BIF_RESTAURANTS
 BEFORE INSERT ON RESTAURANTS
@@ -56,12 +83,13 @@ END;
 /
 
 CREATE OR REPLACE TRIGGER TR_BIF_VILLES
-BEFORE INSERT ON VILLES
+BEFORE INSERT OR UPDATE OF nom_ville ON VILLES
 FOR EACH ROW
 BEGIN
 	IF :NEW.NUMERO IS NULL THEN
 		:NEW.NUMERO := SEQ_VILLES.NEXTVAL;
 	END IF;
+	:NEW.NOM_VILLE_NORMALISE := LOWER(TRIM(:NEW.NOM_VILLE));
 END;
 /
 
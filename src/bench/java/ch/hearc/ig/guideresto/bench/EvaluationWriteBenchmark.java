@@ -0,0 +1,151 @@
+package ch.hearc.ig.guideresto.bench;
+
+import ch.hearc.ig.guideresto.business.*;
+import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
+import ch.hearc.ig.guideresto.persistence.mapper.CompleteEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.mapper.GradeMapper;
+import ch.hearc.ig.guideresto.persistence.mapper.RestaurantRatingMapper;
+import ch.hearc.ig.guideresto.services.CityService;
+import ch.hearc.ig.guideresto.services.EvaluationService;
+import ch.hearc.ig.guideresto.services.RestaurantService;
+import ch.hearc.ig.guideresto.services.RestaurantTypeService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mesure de la latence d'écriture d'une évaluation complète avec ses notes, en comparant l'écriture actuelle
+ * (notes persistées par cascade et compteurs par critère modifiés en mémoire, en batchs JDBC) à l'ancienne
+ * (notes persistées une seconde fois une à une, un UPDATE JPQL par critère).
+ * Les évaluations sont écrites sur un restaurant créé pour l'occasion, supprimé à la fin.
+ * <p>
+ * Le benchmark écrit dans la base configurée dans {@code hibernate.properties} : sans l'option {@code --confirm},
+ * il affiche cette base et s'arrête sans rien écrire. À lancer sur un schéma de test, jamais sur le schéma partagé.
+ * <p>
+ * Usage : {@code EvaluationWriteBenchmark --confirm [nombre d'évaluations par variante]}, dans le profil Maven
+ * {@code bench} qui compile {@code src/bench/java}.
+ */
+public class EvaluationWriteBenchmark {
+
+    private static final int DEFAULT_EVALUATIONS = 200;
+    private static final String CONFIRM = "--confirm";
+    /** Évaluations écrites avant la mesure : chargement des classes, pool de connexions, allocation des séquences. */
+    private static final int WARMUP = 20;
+
+    private static final CompleteEvaluationMapper completeEvaluationMapper = new CompleteEvaluationMapper();
+    private static final GradeMapper gradeMapper = new GradeMapper();
+    private static final RestaurantRatingMapper ratingMapper = new RestaurantRatingMapper();
+
+    public static void main(String[] args) {
+        boolean confirmed = args.length > 0 && CONFIRM.equals(args[0]);
+        int evaluations = confirmed && args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_EVALUATIONS;
+        JpaUtils.init();
+        Restaurant restaurant = null;
+        try {
+            String url = JpaUtils.inReadScope(em -> jdbcUrl(em.getEntityManagerFactory().getProperties()));
+            System.out.println("ATTENTION : le benchmark écrit des évaluations dans la base " + url);
+            if (!confirmed) {
+                System.out.println("Aucune écriture. Relancer avec " + CONFIRM + " en premier argument, sur un schéma de test.");
+                return;
+            }
+            List<EvaluationCriteria> criteria = EvaluationService.getInstance().getAllCriteria();
+            List<City> cities = CityService.getInstance().getAllCities();
+            List<RestaurantType> types = RestaurantTypeService.getInstance().getAllTypes();
+            if (criteria.isEmpty() || cities.isEmpty() || types.isEmpty()) {
+                System.out.println("Il faut au moins un critère d'évaluation, une ville et un type gastronomique en base.");
+                return;
+            }
+            restaurant = RestaurantService.getInstance().addRestaurant("Benchmark " + System.currentTimeMillis(),
+                    "Restaurant temporaire du benchmark", "-", "-", cities.get(0), types.get(0));
+
+            run("cascade et batchs (actuelle)", false, restaurant, criteria, WARMUP);
+            run("notes persistées une à une (ancienne)", true, restaurant, criteria, WARMUP);
+            System.out.printf("%d évaluations de %d notes par variante%n", evaluations, criteria.size());
+            System.out.println(run("notes persistées une à une (ancienne)", true, restaurant, criteria, evaluations));
+            System.out.println(run("cascade et batchs (actuelle)", false, restaurant, criteria, evaluations));
+        } finally {
+            if (restaurant != null) {
+                RestaurantService.getInstance().deleteRestaurant(restaurant);
+            }
+            JpaUtils.close();
+        }
+    }
+
+    private static Result run(String name, boolean previous, Restaurant restaurant,
+                              List<EvaluationCriteria> criteria, int evaluations) {
+        Statistics statistics = JpaUtils.inReadScope(em -> em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics());
+        long statementsBefore = statistics.getPrepareStatementCount();
+        long[] latencies = new long[evaluations];
+        for (int i = 0; i < evaluations; i++) {
+            long start = System.nanoTime();
+            JpaUtils.inTransaction(em -> {
+                CompleteEvaluation eval = new CompleteEvaluation(null, new Date(), restaurant, "benchmark", "benchmark");
+                for (EvaluationCriteria criterion : criteria) {
+                    eval.getGrades().add(new Grade(null, 3, eval, criterion));
+                }
+                completeEvaluationMapper.create(eval, em);
+                if (previous) {
+                    for (Grade grade : eval.getGrades()) {
+                        gradeMapper.create(grade, em);
+                    }
+                    addReviewPerCriterion(restaurant.getId(), eval.getGrades(), em);
+                } else {
+                    ratingMapper.addReview(restaurant.getId(), eval.getGrades(), em);
+                }
+            });
+            latencies[i] = System.nanoTime() - start;
+        }
+        return new Result(name, latencies, (double) (statistics.getPrepareStatementCount() - statementsBefore) / evaluations);
+    }
+
+    private static String jdbcUrl(Map<String, Object> properties) {
+        Object url = properties.getOrDefault("jakarta.persistence.jdbc.url", properties.get("hibernate.connection.url"));
+        return url != null ? url.toString() : "(URL inconnue)";
+    }
+
+    /**
+     * Ancienne mise à jour des compteurs : un UPDATE JPQL, donc un aller-retour, par critère noté.
+     */
+    private static void addReviewPerCriterion(Integer restaurantId, Collection<Grade> grades, EntityManager em) {
+        em.createQuery("UPDATE RestaurantRating rr SET rr.reviewCount = rr.reviewCount + 1 WHERE rr.restaurantId = :restaurantId")
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+        for (Grade grade : grades) {
+            int updated = em.createQuery("UPDATE CriteriaRating cr SET cr.gradeSum = cr.gradeSum + :grade, " +
+                            "cr.gradeCount = cr.gradeCount + 1 WHERE cr.restaurantId = :restaurantId AND cr.criteriaId = :criteriaId")
+                    .setParameter("grade", grade.getGrade().longValue())
+                    .setParameter("restaurantId", restaurantId)
+                    .setParameter("criteriaId", grade.getCriteria().getId())
+                    .executeUpdate();
+            if (updated == 0) {
+                em.persist(new CriteriaRating(restaurantId, grade.getCriteria().getId(), grade.getGrade(), 1));
+            }
+        }
+    }
+
+    /**
+     * Latences d'une variante, en microsecondes, et nombre moyen d'ordres SQL préparés par Hibernate par évaluation.
+     * Le MERGE des compteurs du restaurant de la variante actuelle passe directement par JDBC : il n'y est pas compté.
+     */
+    private record Result(String name, long[] latencies, double statementsPerEvaluation) {
+
+        private long percentile(double p) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1_000;
+        }
+
+        @Override
+        public String toString() {
+            double mean = Arrays.stream(latencies).average().orElse(0) / 1_000;
+            return String.format("%-40s moyenne %8.0f µs   p50 %8d µs   p95 %8d µs   p99 %8d µs   %5.1f ordres SQL / évaluation",
+                    name, mean, percentile(0.50), percentile(0.95), percentile(0.99), statementsPerEvaluation);
+        }
+    }
+}
@@ -28,6 +28,21 @@ import java.util.Date;
                 "WHERE l.ipAddress = :ip " +
                 "AND l.restaurant.id = :restaurantId"
 )
+@NamedQuery(
+        name = "BasicEvaluation.countByRestaurants",
+        query = "SELECT new ch.hearc.ig.guideresto.business.LikeCount(l.restaurant.id, " +
+                "COUNT(CASE WHEN l.likeRestaurant = true THEN 1 END), COUNT(CASE WHEN l.likeRestaurant = false THEN 1 END)) " +
+                "FROM BasicEvaluation l WHERE l.restaurant.id IN :restaurantIds GROUP BY l.restaurant.id"
+)
+@NamedQuery(
+        name = "BasicEvaluation.deleteByRestaurant",
+        query = "DELETE FROM BasicEvaluation l WHERE l.restaurant.id = :restaurantId"
+)
+@NamedQuery(
+        name = "BasicEvaluation.votersSince",
+        query = "SELECT new ch.hearc.ig.guideresto.business.LikeVoter(l.ipAddress, l.restaurant.id) " +
+                "FROM BasicEvaluation l WHERE l.visitDate >= :since"
+)
 @Table(name="LIKES")
 public class BasicEvaluation extends Evaluation {
     @Column
@@ -1,8 +1,14 @@
 package ch.hearc.ig.guideresto.business;
 
 import jakarta.persistence.*;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -16,24 +22,35 @@ import java.util.Set;
 )
 
 @NamedQuery(
-        name = "City.findByName",
-        query = "SELECT c FROM City c WHERE LOWER(c.cityName) = LOWER(:name)"
-)
-@NamedQuery(
-        name = "City.existsByName",
-        query = "SELECT COUNT(c) > 0 FROM City c WHERE LOWER(c.cityName) = LOWER(:name)"
+        name = "City.findAll",
+        query = "SELECT c FROM City c ORDER BY c.cityName",
+        hints = {
+                @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+                @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "guideresto.query.reference")
+        }
 )
 
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "guideresto.City")
+@NaturalIdCache(region = "guideresto.City.naturalId")
 @Table(name="VILLES")
 public class City implements IBusinessObject {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SeqVilles")
+    @SequenceGenerator(name = "SeqVilles", sequenceName = "SEQ_VILLES", allocationSize = 50)
     @Column(name="NUMERO")
     private Integer id;
+    @Version
+    @Column(name="VERSION", nullable=false)
+    private Integer version;
     @Column(name="CODE_POSTAL")
     private String zipCode;
     @Column(name="NOM_VILLE")
     private String cityName;
+    // Identifiant naturel : nom de ville normalisé, tenu à jour par setCityName (et par trigger pour les insertions SQL)
+    @NaturalId(mutable = true)
+    @Column(name="NOM_VILLE_NORMALISE", nullable=false, unique=true)
+    private String normalizedName;
     @OneToMany(mappedBy = "address.city", fetch = FetchType.LAZY)
     private Set<Restaurant> restaurants;
 
@@ -49,9 +66,20 @@ public class City implements IBusinessObject {
         this.id = id;
         this.zipCode = zipCode;
         this.cityName = cityName;
+        this.normalizedName = normalizeName(cityName);
         this.restaurants = new HashSet<>();
     }
 
+    /**
+     * Méthode de normalisation d'un nom de ville, identique à celle du trigger TR_BIF_VILLES :
+     * espaces de début et de fin retirés, minuscules.
+     * @param cityName - nom de ville saisi
+     * @return le nom normalisé, ou null si le nom est null
+     */
+    public static String normalizeName(String cityName) {
+        return cityName == null ? null : cityName.trim().toLowerCase(Locale.ROOT);
+    }
+
     public Integer getId() {
         return id;
     }
@@ -60,6 +88,14 @@ public class City implements IBusinessObject {
         this.id = id;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     public String getZipCode() {
         return zipCode;
     }
@@ -74,6 +110,11 @@ public class City implements IBusinessObject {
 
     public void setCityName(String city) {
         this.cityName = city;
+        this.normalizedName = normalizeName(city);
+    }
+
+    public String getNormalizedName() {
+        return normalizedName;
     }
 
     public Set<Restaurant> getRestaurants() {
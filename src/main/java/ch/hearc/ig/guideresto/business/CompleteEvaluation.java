@@ -19,10 +19,18 @@ import java.util.Set;
 )
 @NamedQuery(
         name = "CompleteEvaluation.findByRestaurant",
-        query = "SELECT DISTINCT ce FROM CompleteEvaluation ce " +
-                "LEFT JOIN FETCH ce.grades g " +
-                "LEFT JOIN FETCH g.criteria " +
-                "WHERE ce.restaurant = :restaurant"
+        query = "SELECT ce FROM CompleteEvaluation ce WHERE ce.restaurant = :restaurant"
+)
+@NamedQuery(
+        name = "CompleteEvaluation.deleteByRestaurant",
+        query = "DELETE FROM CompleteEvaluation ce WHERE ce.restaurant.id = :restaurantId"
+)
+
+// Vue évaluation : le commentaire avec ses notes et leurs critères, sans le restaurant
+@NamedEntityGraph(
+        name = "CompleteEvaluation.detail",
+        attributeNodes = @NamedAttributeNode(value = "grades", subgraph = "grades"),
+        subgraphs = @NamedSubgraph(name = "grades", attributeNodes = @NamedAttributeNode("criteria"))
 )
 
 @Table(name="COMMENTAIRES")
@@ -32,9 +40,9 @@ public class CompleteEvaluation extends Evaluation {
     private String comment;
     @Column(name="NOM_UTILISATEUR")
     private String username;
-    @OneToMany(mappedBy = "evaluation", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true) // évite des problèmes de LazyInitialisationException
+    @OneToMany(mappedBy = "evaluation", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true) // chargées via le graphe CompleteEvaluation.detail
     private Set<Grade> grades;
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "fk_rest", nullable = false)
     private Restaurant restaurant;
 
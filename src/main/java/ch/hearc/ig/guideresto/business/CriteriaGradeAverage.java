@@ -0,0 +1,12 @@
+package ch.hearc.ig.guideresto.business;
+
+/**
+ * Moyenne des notes d'un restaurant pour un critère d'évaluation, calculée en base par une requête groupée.
+ *
+ * @param restaurantId identifiant du restaurant
+ * @param criteriaId identifiant du critère
+ * @param count nombre de notes
+ * @param average note moyenne
+ */
+public record CriteriaGradeAverage(int restaurantId, int criteriaId, long count, double average) {
+}
@@ -0,0 +1,131 @@
+package ch.hearc.ig.guideresto.business;
+
+import jakarta.persistence.*;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Somme et nombre des notes d'un restaurant pour un critère d'évaluation, tenus à jour
+ * dans la même transaction que l'ajout d'une évaluation complète.
+ */
+@Entity
+
+@NamedQuery(
+        name = "CriteriaRating.countersByRestaurant",
+        query = "SELECT cr FROM CriteriaRating cr WHERE cr.restaurantId = :restaurantId"
+)
+@NamedQuery(
+        name = "CriteriaRating.findByRestaurant",
+        query = "SELECT cr FROM CriteriaRating cr JOIN FETCH cr.criteria WHERE cr.restaurantId = :restaurantId ORDER BY cr.criteriaId"
+)
+@NamedQuery(
+        name = "CriteriaRating.deleteByRestaurant",
+        query = "DELETE FROM CriteriaRating cr WHERE cr.restaurantId = :restaurantId"
+)
+@NamedQuery(
+        name = "CriteriaRating.rebuild",
+        query = "INSERT INTO CriteriaRating (restaurantId, criteriaId, gradeSum, gradeCount) " +
+                "SELECT ce.restaurant.id, g.criteria.id, SUM(g.grade), COUNT(g) " +
+                "FROM Grade g JOIN g.evaluation ce " +
+                "GROUP BY ce.restaurant.id, g.criteria.id"
+)
+@IdClass(CriteriaRating.Key.class)
+@Table(name = "STATS_NOTES")
+public class CriteriaRating {
+    @Id
+    @Column(name = "FK_REST")
+    private Integer restaurantId;
+    @Id
+    @Column(name = "FK_CRIT")
+    private Integer criteriaId;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "FK_CRIT", insertable = false, updatable = false)
+    private EvaluationCriteria criteria;
+    @Column(name = "SOMME_NOTES", nullable = false)
+    private long gradeSum;
+    @Column(name = "NB_NOTES", nullable = false)
+    private long gradeCount;
+
+    public CriteriaRating() {
+        this(null, null, 0, 0);
+    }
+
+    public CriteriaRating(Integer restaurantId, Integer criteriaId, long gradeSum, long gradeCount) {
+        this.restaurantId = restaurantId;
+        this.criteriaId = criteriaId;
+        this.gradeSum = gradeSum;
+        this.gradeCount = gradeCount;
+    }
+
+    public Integer getRestaurantId() {
+        return restaurantId;
+    }
+
+    public Integer getCriteriaId() {
+        return criteriaId;
+    }
+
+    /**
+     * @return le critère noté, chargé à la demande (en lecture seule)
+     */
+    public EvaluationCriteria getCriteria() {
+        return criteria;
+    }
+
+    public long getGradeSum() {
+        return gradeSum;
+    }
+
+    public long getGradeCount() {
+        return gradeCount;
+    }
+
+    /**
+     * Compter une note de plus pour ce critère
+     * @param grade - la note
+     */
+    public void addGrade(long grade) {
+        this.gradeSum += grade;
+        this.gradeCount++;
+    }
+
+    /**
+     * @return la note moyenne du critère, ou 0 si le critère n'a jamais été noté
+     */
+    public double getAverage() {
+        return gradeCount == 0 ? 0 : (double) gradeSum / gradeCount;
+    }
+
+    /**
+     * Clé composée (restaurant, critère).
+     */
+    public static class Key implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private Integer restaurantId;
+        private Integer criteriaId;
+
+        public Key() {
+        }
+
+        public Key(Integer restaurantId, Integer criteriaId) {
+            this.restaurantId = restaurantId;
+            this.criteriaId = criteriaId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+            return Objects.equals(restaurantId, key.restaurantId) && Objects.equals(criteriaId, key.criteriaId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(restaurantId, criteriaId);
+        }
+    }
+}
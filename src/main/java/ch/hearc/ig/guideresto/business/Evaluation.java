@@ -21,10 +21,13 @@ public abstract class Evaluation implements IBusinessObject {
     @SequenceGenerator(
             name = "SeqEval",
             sequenceName = "SEQ_EVAL", // MAJUSCULE ! Oracle = case-insensitive MAIS Hibernate ≠
-            allocationSize = 1
+            allocationSize = 50 // = INCREMENT BY de la séquence
     )
     @Column(name="numero")
     private Integer id;
+    @Version
+    @Column(name="version", nullable=false)
+    private Integer version;
     @Column(name="date_eval")
     private Date visitDate;
     @ManyToOne(fetch = FetchType.LAZY)
@@ -63,4 +66,12 @@ public abstract class Evaluation implements IBusinessObject {
     public void setId(Integer id) {
         this.id = id;
     }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package ch.hearc.ig.guideresto.business;
 
 import jakarta.persistence.*;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -19,21 +22,27 @@ import java.util.Set;
         name = "EvaluationCriteria.findByDescription",
         query = "SELECT ec FROM EvaluationCriteria ec WHERE ec.description LIKE :description"
 )
-@NamedQuery(
-        name = "EvaluationCriteria.findById",
-        query = "SELECT e FROM EvaluationCriteria e WHERE e.id = :id"
-)
 @NamedQuery(
         name = "EvaluationCriteria.findAll",
-        query = "SELECT e FROM EvaluationCriteria e"
+        query = "SELECT e FROM EvaluationCriteria e",
+        hints = {
+                @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+                @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "guideresto.query.reference")
+        }
 )
 
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "guideresto.EvaluationCriteria")
 @Table(name="CRITERES_EVALUATION")
 public class EvaluationCriteria implements IBusinessObject {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SeqCriteres")
+    @SequenceGenerator(name = "SeqCriteres", sequenceName = "SEQ_CRITERES_EVALUATION", allocationSize = 50)
     @Column(name="NUMERO", nullable=false)
     private Integer id;
+    @Version
+    @Column(name="VERSION", nullable=false)
+    private Integer version;
     @Column(name="NOM", nullable=false)
     private String name;
     @Column(name="DESCRIPTION", nullable=false)
@@ -67,6 +76,14 @@ public class EvaluationCriteria implements IBusinessObject {
         this.id = id;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
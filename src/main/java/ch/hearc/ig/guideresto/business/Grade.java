@@ -27,14 +27,31 @@ import jakarta.persistence.*;
         name = "Grade.findByEvaluation",
         query = "SELECT g FROM Grade g WHERE g.evaluation = :evaluation"
 )
+@NamedQuery(
+        name = "Grade.deleteByRestaurant",
+        query = "DELETE FROM Grade g WHERE g.evaluation.id IN " +
+                "(SELECT ce.id FROM CompleteEvaluation ce WHERE ce.restaurant.id = :restaurantId)"
+)
 @NamedQuery(
         name = "Grade.findByGrade",
         query = "SELECT g FROM Grade g WHERE g.grade = :grade"
 )
+@NamedQuery(
+        name = "Grade.averageByRestaurants",
+        query = "SELECT new ch.hearc.ig.guideresto.business.GradeAverage(ce.restaurant.id, COUNT(g), AVG(g.grade)) " +
+                "FROM Grade g JOIN g.evaluation ce WHERE ce.restaurant.id IN :restaurantIds GROUP BY ce.restaurant.id"
+)
+@NamedQuery(
+        name = "Grade.averageByRestaurantsAndCriteria",
+        query = "SELECT new ch.hearc.ig.guideresto.business.CriteriaGradeAverage(ce.restaurant.id, g.criteria.id, COUNT(g), AVG(g.grade)) " +
+                "FROM Grade g JOIN g.evaluation ce WHERE ce.restaurant.id IN :restaurantIds " +
+                "GROUP BY ce.restaurant.id, g.criteria.id ORDER BY ce.restaurant.id, g.criteria.id"
+)
 @Table(name="NOTES")
 public class Grade implements IBusinessObject {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SeqNotes")
+    @SequenceGenerator(name = "SeqNotes", sequenceName = "SEQ_NOTES", allocationSize = 50)
     @Column(name="NUMERO")
     private Integer id;
     @Column(name="NOTE")
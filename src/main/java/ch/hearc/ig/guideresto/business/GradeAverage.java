@@ -0,0 +1,11 @@
+package ch.hearc.ig.guideresto.business;
+
+/**
+ * Moyenne des notes d'un restaurant, tous critères confondus, calculée en base par une requête groupée.
+ *
+ * @param restaurantId identifiant du restaurant
+ * @param count nombre de notes
+ * @param average note moyenne
+ */
+public record GradeAverage(int restaurantId, long count, double average) {
+}
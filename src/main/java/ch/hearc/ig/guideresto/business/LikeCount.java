@@ -0,0 +1,31 @@
+package ch.hearc.ig.guideresto.business;
+
+/**
+ * Nombre de likes et de dislikes d'un restaurant, compté en base par une requête groupée.
+ *
+ * @param restaurantId identifiant du restaurant
+ * @param likes nombre d'évaluations positives
+ * @param dislikes nombre d'évaluations négatives
+ */
+public record LikeCount(int restaurantId, long likes, long dislikes) {
+
+    /**
+     * @param restaurantId - identifiant du restaurant
+     * @return les compteurs d'un restaurant sans évaluation basique
+     */
+    public static LikeCount none(int restaurantId) {
+        return new LikeCount(restaurantId, 0, 0);
+    }
+
+    public long total() {
+        return likes + dislikes;
+    }
+
+    /**
+     * @return la part de likes, entre 0 et 1 (0 sans évaluation)
+     */
+    public double likeRatio() {
+        long total = total();
+        return total == 0 ? 0 : (double) likes / total;
+    }
+}
@@ -0,0 +1,10 @@
+package ch.hearc.ig.guideresto.business;
+
+/**
+ * Auteur d'une évaluation basique : adresse IP et restaurant évalué, sans le vote lui-même.
+ *
+ * @param ipAddress adresse IP de l'évaluateur
+ * @param restaurantId identifiant du restaurant évalué
+ */
+public record LikeVoter(String ipAddress, int restaurantId) {
+}
@@ -1,6 +1,7 @@
 package ch.hearc.ig.guideresto.business;
 
 import jakarta.persistence.*;
+import org.hibernate.jpa.HibernateHints;
 
 import java.util.Set;
 
@@ -10,6 +11,30 @@ import java.util.Set;
 
  @Entity
 
+ // Vue liste : le restaurant, son type et sa ville
+ @NamedEntityGraph(
+         name = "Restaurant.summary",
+         attributeNodes = {
+                 @NamedAttributeNode("type"),
+                 @NamedAttributeNode(value = "address", subgraph = "address")
+         },
+         subgraphs = @NamedSubgraph(name = "address", attributeNodes = @NamedAttributeNode("city"))
+ )
+ // Vue détail : la vue liste et les évaluations complètes avec leurs notes et critères
+ @NamedEntityGraph(
+         name = "Restaurant.detail",
+         attributeNodes = {
+                 @NamedAttributeNode("type"),
+                 @NamedAttributeNode(value = "address", subgraph = "address"),
+                 @NamedAttributeNode(value = "completeEvaluations", subgraph = "evaluations")
+         },
+         subgraphs = {
+                 @NamedSubgraph(name = "address", attributeNodes = @NamedAttributeNode("city")),
+                 @NamedSubgraph(name = "evaluations", attributeNodes = @NamedAttributeNode(value = "grades", subgraph = "grades")),
+                 @NamedSubgraph(name = "grades", attributeNodes = @NamedAttributeNode("criteria"))
+         }
+ )
+
  @NamedQuery(
          name = "Restaurant.findByName",
          query = "SELECT r FROM Restaurant r WHERE LOWER(r.name) LIKE LOWER(:name)"
@@ -31,31 +56,82 @@ import java.util.Set;
  )
  @NamedQuery(
          name = "Restaurant.findByRestaurantType",
-         query = "SELECT r FROM Restaurant r WHERE r.type.label = :label"
+         query = "SELECT r FROM Restaurant r WHERE LOWER(r.type.label) LIKE LOWER(:label)"
  )
  @NamedQuery(
          name = "Restaurant.findByCity",
-         query = "SELECT r FROM Restaurant r WHERE r.address.city.cityName = :cityName"
+         query = "SELECT r FROM Restaurant r WHERE LOWER(r.address.city.cityName) LIKE LOWER(:cityName)"
+ )
+ // Projections des listes : uniquement les colonnes affichées, aucune entité chargée
+ @NamedQuery(
+         name = "Restaurant.summaries",
+         query = "SELECT new ch.hearc.ig.guideresto.business.RestaurantSummary(r.id, r.name, r.address.street, c.zipCode, c.cityName) " +
+                 "FROM Restaurant r JOIN r.address.city c ORDER BY r.name, r.id",
+         hints = {
+                 @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+                 @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "guideresto.query.restaurants")
+         }
+ )
+ @NamedQuery(
+         name = "Restaurant.summariesByName",
+         query = "SELECT new ch.hearc.ig.guideresto.business.RestaurantSummary(r.id, r.name, r.address.street, c.zipCode, c.cityName) " +
+                 "FROM Restaurant r JOIN r.address.city c WHERE LOWER(r.name) LIKE LOWER(:name) ORDER BY r.name, r.id",
+         hints = {
+                 @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+                 @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "guideresto.query.restaurants")
+         }
+ )
+ @NamedQuery(
+         name = "Restaurant.summariesByCity",
+         query = "SELECT new ch.hearc.ig.guideresto.business.RestaurantSummary(r.id, r.name, r.address.street, c.zipCode, c.cityName) " +
+                 "FROM Restaurant r JOIN r.address.city c WHERE LOWER(c.cityName) LIKE LOWER(:cityName) ORDER BY r.name, r.id"
+ )
+ @NamedQuery(
+         name = "Restaurant.summariesByType",
+         query = "SELECT new ch.hearc.ig.guideresto.business.RestaurantSummary(r.id, r.name, r.address.street, c.zipCode, c.cityName) " +
+                 "FROM Restaurant r JOIN r.address.city c WHERE LOWER(r.type.label) LIKE LOWER(:label) ORDER BY r.name, r.id"
+ )
+ @NamedQuery(
+         name = "Restaurant.summariesOfType",
+         query = "SELECT new ch.hearc.ig.guideresto.business.RestaurantSummary(r.id, r.name, r.address.street, c.zipCode, c.cityName) " +
+                 "FROM Restaurant r JOIN r.address.city c WHERE r.type = :type ORDER BY r.name, r.id"
+ )
+ @NamedQuery(
+         name = "Restaurant.placements",
+         query = "SELECT new ch.hearc.ig.guideresto.business.RestaurantPlacement(r.id, r.name, r.address.city.id, r.type.id) " +
+                 "FROM Restaurant r"
  )
  @NamedQuery(
          name = "Restaurant.updateAddress",
-         query = "UPDATE Restaurant r SET r.address.street = :street, r.address.city = :city WHERE r.id = :id"
+         query = "UPDATE VERSIONED Restaurant r SET r.address.street = :street, r.address.city = :city WHERE r.id = :id"
+ )
+ @NamedQuery(
+         name = "Restaurant.deleteById",
+         query = "DELETE FROM Restaurant r WHERE r.id = :id"
+ )
+ @NamedQuery(
+         name = "Restaurant.deleteByIdAndVersion",
+         query = "DELETE FROM Restaurant r WHERE r.id = :id AND r.version = :version"
  )
 
 
  @Table(name = "RESTAURANTS")
 public class Restaurant implements IBusinessObject {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SeqRestaurants")
+    @SequenceGenerator(name = "SeqRestaurants", sequenceName = "SEQ_RESTAURANTS", allocationSize = 50)
     @Column(name="NUMERO", nullable=false)
     private Integer id;
+    @Version
+    @Column(name="VERSION", nullable=false)
+    private Integer version;
     @Column(name="NOM", nullable=false)
     private String name;
     @Column(name="DESCRIPTION", nullable=false)
     private String description;
     @Column(name="SITE_WEB", nullable=false)
     private String website;
-    @OneToMany(mappedBy = "restaurant", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+    @OneToMany(mappedBy = "restaurant", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<CompleteEvaluation> completeEvaluations;
     @OneToMany(mappedBy = "restaurant", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<BasicEvaluation> basicEvaluations;
@@ -98,6 +174,14 @@ public class Restaurant implements IBusinessObject {
         this.id = id;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
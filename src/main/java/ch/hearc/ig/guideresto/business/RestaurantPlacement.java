@@ -0,0 +1,22 @@
+package ch.hearc.ig.guideresto.business;
+
+/**
+ * Nom, ville et type d'un restaurant, lus par projection pour construire les classements
+ * sans charger les restaurants.
+ *
+ * @param id identifiant du restaurant
+ * @param name nom du restaurant
+ * @param cityId identifiant de la ville
+ * @param typeId identifiant du type de restaurant
+ */
+public record RestaurantPlacement(int id, String name, int cityId, int typeId) {
+
+    /**
+     * @param restaurant - restaurant dont la ville et le type sont chargés ou sont des proxys
+     * @return la position du restaurant, lue sans initialiser sa ville ni son type
+     */
+    public static RestaurantPlacement of(Restaurant restaurant) {
+        return new RestaurantPlacement(restaurant.getId(), restaurant.getName(),
+                restaurant.getAddress().getCity().getId(), restaurant.getType().getId());
+    }
+}
@@ -0,0 +1,75 @@
+package ch.hearc.ig.guideresto.business;
+
+import jakarta.persistence.*;
+
+/**
+ * Compteurs d'évaluations d'un restaurant (likes, dislikes, évaluations complètes), tenus à jour
+ * dans la même transaction que l'ajout d'une évaluation. Permet d'afficher la note d'un restaurant
+ * sans relire ses évaluations.
+ */
+@Entity
+
+@NamedQuery(
+        name = "RestaurantRating.deleteByRestaurant",
+        query = "DELETE FROM RestaurantRating rr WHERE rr.restaurantId = :restaurantId"
+)
+@NamedQuery(
+        name = "RestaurantRating.rebuild",
+        query = "INSERT INTO RestaurantRating (restaurantId, likeCount, dislikeCount, reviewCount) " +
+                "SELECT r.id, " +
+                "(SELECT COUNT(l) FROM BasicEvaluation l WHERE l.restaurant = r AND l.likeRestaurant = true), " +
+                "(SELECT COUNT(l) FROM BasicEvaluation l WHERE l.restaurant = r AND l.likeRestaurant = false), " +
+                "(SELECT COUNT(ce) FROM CompleteEvaluation ce WHERE ce.restaurant = r) " +
+                "FROM Restaurant r"
+)
+@Table(name = "STATS_RESTAURANTS")
+public class RestaurantRating implements IBusinessObject {
+    @Id
+    @Column(name = "FK_REST")
+    private Integer restaurantId;
+    @Column(name = "NB_LIKES", nullable = false)
+    private long likeCount;
+    @Column(name = "NB_DISLIKES", nullable = false)
+    private long dislikeCount;
+    @Column(name = "NB_EVALUATIONS", nullable = false)
+    private long reviewCount;
+
+    public RestaurantRating() {
+        this(null);
+    }
+
+    public RestaurantRating(Integer restaurantId) {
+        this(restaurantId, 0, 0, 0);
+    }
+
+    public RestaurantRating(Integer restaurantId, long likeCount, long dislikeCount, long reviewCount) {
+        this.restaurantId = restaurantId;
+        this.likeCount = likeCount;
+        this.dislikeCount = dislikeCount;
+        this.reviewCount = reviewCount;
+    }
+
+    /**
+     * @return l'identifiant du restaurant, qui identifie aussi ses compteurs
+     */
+    @Override
+    public Integer getId() {
+        return restaurantId;
+    }
+
+    public Integer getRestaurantId() {
+        return restaurantId;
+    }
+
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    public long getDislikeCount() {
+        return dislikeCount;
+    }
+
+    public long getReviewCount() {
+        return reviewCount;
+    }
+}
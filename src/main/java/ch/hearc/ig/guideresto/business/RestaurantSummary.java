@@ -0,0 +1,15 @@
+package ch.hearc.ig.guideresto.business;
+
+/**
+ * Vue résumée d'un restaurant pour les listes et les résultats de recherche.
+ * Construite directement par les requêtes de projection (expression constructeur JPQL) :
+ * ce n'est pas une entité, elle n'est jamais gérée par un EntityManager.
+ *
+ * @param id identifiant du restaurant, pour charger son détail
+ * @param name nom du restaurant
+ * @param street rue
+ * @param zipCode code postal de la ville
+ * @param cityName nom de la ville
+ */
+public record RestaurantSummary(Integer id, String name, String street, String zipCode, String cityName) {
+}
@@ -1,6 +1,11 @@
 package ch.hearc.ig.guideresto.business;
 
 import jakarta.persistence.*;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -20,25 +25,33 @@ import java.util.Set;
         name = "RestaurantType.findByDescription",
         query = "SELECT rt FROM RestaurantType rt WHERE rt.description LIKE :description"
 )
-@NamedQuery(
-        name = "RestaurantType.findById",
-        query = "SELECT rt FROM RestaurantType rt WHERE rt.id = :id"
-)
 @NamedQuery(
         name = "RestaurantType.findAll",
-        query = "SELECT rt FROM RestaurantType rt ORDER BY rt.label"
+        query = "SELECT rt FROM RestaurantType rt ORDER BY rt.label",
+        hints = {
+                @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+                @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "guideresto.query.reference")
+        }
 )
 @NamedQuery(
         name = "RestaurantType.existsByName",
         query = "SELECT COUNT(rt) FROM RestaurantType rt WHERE rt.label = :label"
 )
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "guideresto.RestaurantType")
+@NaturalIdCache(region = "guideresto.RestaurantType.naturalId")
 @Table(name="TYPES_GASTRONOMIQUES")
 public class RestaurantType implements IBusinessObject {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SeqTypes")
+    @SequenceGenerator(name = "SeqTypes", sequenceName = "SEQ_TYPES_GASTRONOMIQUES", allocationSize = 50)
     @Column(name="NUMERO", nullable=false)
     private Integer id;
-    @Column (name="LIBELLE", nullable=false)
+    @Version
+    @Column(name="VERSION", nullable=false)
+    private Integer version;
+    @NaturalId(mutable = true)
+    @Column (name="LIBELLE", nullable=false, unique=true)
     private String label;
     @Column (name="DESCRIPTION", nullable=false)
     private String description;
@@ -73,6 +86,14 @@ public class RestaurantType implements IBusinessObject {
         this.id = id;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     public String getLabel() {
         return label;
     }
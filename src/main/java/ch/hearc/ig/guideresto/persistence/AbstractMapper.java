@@ -1,17 +1,52 @@
 package ch.hearc.ig.guideresto.persistence;
 
 import ch.hearc.ig.guideresto.business.IBusinessObject;
-import jakarta.persistence.Entity;
+import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
+import jakarta.persistence.EntityGraph;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.Query;
+import jakarta.persistence.Timeout;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.hibernate.Session;
+import org.hibernate.Timeouts;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
 
 public abstract class AbstractMapper<T extends IBusinessObject> {
 
-    protected AbstractMapper() {
+    /** Taille de lot par défaut, alignée sur hibernate.jdbc.batch_size. */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    /** Nombre maximal d'éléments dans une liste IN sous Oracle. */
+    protected static final int IN_LIST_LIMIT = 1000;
+
+    /** Taille maximale par défaut d'une page de résultats. */
+    public static final int DEFAULT_MAX_PAGE_SIZE = 100;
+    /** Nombre de lignes ramenées par aller-retour JDBC lors des parcours en flux. */
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private final Class<T> entityClass;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    protected AbstractMapper(Class<T> entityClass) {
+        this.entityClass = entityClass;
     }
 
     public abstract T findById(Integer id);
@@ -21,13 +56,382 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
     public abstract boolean delete(T object, EntityManager em) throws SQLException;
     public abstract boolean deleteById(Integer id, EntityManager em) throws SQLException;
 
+    /**
+     * Indique si les suppressions en masse peuvent passer par un DELETE JPQL,
+     * c'est-à-dire si l'entité n'a aucune association en cascade à supprimer avec elle.
+     * @return false par défaut : suppression entité par entité
+     */
+    protected boolean supportsBulkDelete() {
+        return false;
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Définit la taille des lots utilisés par les opérations en masse.
+     * @param batchSize - nombre d'objets traités entre deux flush/clear
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("La taille de lot doit être positive : " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     * Définit la taille maximale des pages retournées par les recherches paginées.
+     * @param maxPageSize - nombre maximal de résultats par page
+     */
+    public void setMaxPageSize(int maxPageSize) {
+        if (maxPageSize < 1) {
+            throw new IllegalArgumentException("La taille de page doit être positive : " + maxPageSize);
+        }
+        this.maxPageSize = maxPageSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Définit le nombre de lignes lues par aller-retour avec la base lors des parcours en flux.
+     * @param fetchSize - taille des lots de lecture JDBC
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("La taille de lecture doit être positive : " + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Méthode de persistence en masse. Le contexte de persistance est vidé (flush + clear)
+     * après chaque lot : les objets créés, comme tous ceux gérés par l'EM, sont détachés au retour.
+     * Attention : cela vaut aussi pour les objets chargés ou modifiés par l'appelant plus tôt dans la même
+     * transaction (leurs modifications sont écrites au flush, mais les suivantes seraient ignorées) ;
+     * les relire avec {@code em.find} après l'appel pour continuer à les modifier.
+     * @param objects - objets à ajouter en base
+     * @param em - EntityManager de la transaction courante
+     * @return les objets persistés, dans l'ordre de la collection
+     */
+    public List<T> createAll(Collection<? extends T> objects, EntityManager em) {
+        List<T> created = new ArrayList<>(objects.size());
+        int pending = 0;
+        for (T object : objects) {
+            created.add(create(object, em));
+            if (++pending == batchSize) {
+                flushAndClear(em);
+                pending = 0;
+            }
+        }
+        flushAndClear(em);
+        return created;
+    }
+
+    /**
+     * Méthode de mise à jour en masse, par lots vidés du contexte de persistance (flush + clear).
+     * Comme pour {@link #createAll}, tous les objets gérés par l'EM sont détachés au retour,
+     * y compris ceux que l'appelant a chargés plus tôt dans la transaction.
+     * @param objects - objets à mettre à jour
+     * @param em - EntityManager de la transaction courante
+     * @return le nombre d'objets mis à jour
+     */
+    public int updateAll(Collection<? extends T> objects, EntityManager em) {
+        int updated = 0;
+        int pending = 0;
+        for (T object : objects) {
+            if (update(object, em)) {
+                updated++;
+            }
+            if (++pending == batchSize) {
+                flushAndClear(em);
+                pending = 0;
+            }
+        }
+        flushAndClear(em);
+        return updated;
+    }
+
+    /**
+     * Méthode de suppression en masse par identifiants.
+     * Passe par un DELETE JPQL par tranche d'identifiants lorsque l'entité n'a pas de cascade
+     * ({@link #supportsBulkDelete()}), sinon supprime entité par entité, par lots vidés du contexte.
+     * Dans les deux cas le contexte de persistance est vidé : tous les objets gérés par l'EM sont détachés
+     * au retour, y compris ceux que l'appelant a chargés plus tôt dans la transaction.
+     * @param ids - identifiants des objets à supprimer
+     * @param em - EntityManager de la transaction courante
+     * @return le nombre d'objets supprimés
+     */
+    public int deleteAllById(Collection<Integer> ids, EntityManager em) {
+        int deleted = 0;
+        if (supportsBulkDelete()) {
+            em.flush();
+            String ql = "DELETE FROM " + entityName(em) + " e WHERE e.id IN :ids";
+            for (List<Integer> chunk : chunks(ids, IN_LIST_LIMIT)) {
+                deleted += em.createQuery(ql).setParameter("ids", chunk).executeUpdate();
+            }
+            em.clear(); // le DELETE JPQL ne met pas à jour les entités déjà chargées
+            return deleted;
+        }
+        for (List<Integer> chunk : chunks(ids, batchSize)) {
+            for (Integer id : chunk) {
+                T entity = em.find(entityClass, id);
+                if (entity != null) {
+                    em.remove(entity);
+                    deleted++;
+                }
+            }
+            flushAndClear(em);
+        }
+        return deleted;
+    }
+
+    /**
+     * Parcours en flux de tous les objets, en mémoire constante : les lignes sont lues par un curseur JDBC
+     * par lots de {@link #getFetchSize()} et chaque objet est détaché du contexte de persistance dès que
+     * l'objet suivant est lu. Seul l'objet courant peut donc charger ses associations à la demande.
+     * Doit être appelée dans une unité de travail, et le flux fermé avant la fin de celle-ci (try-with-resources) :
+     * il garde le curseur ouvert jusqu'à sa fermeture.
+     * @return le flux des objets, en lecture seule
+     * @throws IllegalStateException si aucune unité de travail n'est ouverte sur le thread
+     */
+    public Stream<T> streamAll() {
+        return streamAll(fetchSize);
+    }
+
+    /**
+     * Parcours en flux de tous les objets, comme {@link #streamAll()}, avec une taille de lecture propre à l'appel
+     * (plus grande pour un export qui lit toute la table, plus petite si chaque objet charge ses associations).
+     * @param fetchSize - nombre de lignes lues par aller-retour avec la base
+     * @return le flux des objets, en lecture seule
+     * @throws IllegalStateException si aucune unité de travail n'est ouverte sur le thread
+     */
+    public Stream<T> streamAll(int fetchSize) {
+        EntityManager em = JpaUtils.getEntityManager();
+        return stream(em.createQuery("SELECT e FROM " + entityName(em) + " e", entityClass), fetchSize, em);
+    }
+
+    /**
+     * Exécute une requête en flux, avec la taille de lecture du mapper et détachement de chaque objet consommé.
+     * @param query - requête dont le résultat est de type T
+     * @param em - EntityManager de l'unité de travail courante
+     * @return le flux des résultats, à fermer par l'appelant
+     * @see #streamAll()
+     */
+    protected Stream<T> stream(TypedQuery<T> query, EntityManager em) {
+        return stream(query, fetchSize, em);
+    }
+
+    /**
+     * Exécute une requête en flux avec la taille de lecture donnée, et détachement de chaque objet consommé.
+     * @param query - requête dont le résultat est de type T
+     * @param fetchSize - nombre de lignes lues par aller-retour avec la base
+     * @param em - EntityManager de l'unité de travail courante
+     * @return le flux des résultats, à fermer par l'appelant
+     */
+    protected Stream<T> stream(TypedQuery<T> query, int fetchSize, EntityManager em) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("La taille de lecture doit être positive : " + fetchSize);
+        }
+        Stream<T> rows = query
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true) // pas de copie pour le dirty checking
+                .getResultStream();
+        DetachingIterator<T> iterator = new DetachingIterator<>(rows.iterator(), em);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    iterator.release();
+                    rows.close();
+                });
+    }
+
+    /**
+     * Détache l'objet précédemment retourné lorsque le suivant est demandé.
+     */
+    private static final class DetachingIterator<E> implements Iterator<E> {
+        private final Iterator<E> source;
+        private final EntityManager em;
+        private E previous;
+
+        private DetachingIterator(Iterator<E> source, EntityManager em) {
+            this.source = source;
+            this.em = em;
+        }
+
+        @Override
+        public boolean hasNext() {
+            release();
+            return source.hasNext();
+        }
+
+        @Override
+        public E next() {
+            release();
+            previous = source.next();
+            return previous;
+        }
+
+        private void release() {
+            if (previous != null && em.isOpen() && em.contains(previous)) {
+                em.detach(previous);
+            }
+            previous = null;
+        }
+    }
+
+    /**
+     * Méthode de recherche d'un objet par son identifiant selon un plan de chargement.
+     * @param id - identifiant de l'objet recherché
+     * @param plan - associations à charger avec l'objet
+     * @return l'objet trouvé, ou null s'il n'existe pas
+     */
+    public T findById(Integer id, FetchPlan plan) {
+        if (id == null) return null;
+        return inReadScope(em -> {
+            EntityGraph<?> graph = entityGraph(plan, em);
+            return graph == null
+                    ? em.find(entityClass, id)
+                    : em.find(entityClass, id, Map.of(SpecHints.HINT_SPEC_LOAD_GRAPH, graph));
+        });
+    }
+
+    /**
+     * Applique un plan de chargement à une requête (graphe de chargement JPA) : les associations du graphe
+     * sont chargées par jointure, les autres gardent le chargement défini par le mapping.
+     * @param query - requête dont le résultat est de type T
+     * @param plan - associations à charger avec les objets
+     * @param em - EntityManager de la requête
+     * @return la requête, pour chaîner les appels
+     */
+    protected <Q extends Query> Q withFetchPlan(Q query, FetchPlan plan, EntityManager em) {
+        EntityGraph<?> graph = entityGraph(plan, em);
+        if (graph != null) {
+            query.setHint(SpecHints.HINT_SPEC_LOAD_GRAPH, graph);
+        }
+        return query;
+    }
+
+    /**
+     * Méthode de recherche d'une page de résultats par clé (keyset) : les résultats sont triés sur (clé de tri, id)
+     * et la page suivante est lue directement après la position du jeton, sans relire les pages précédentes.
+     * Suppose que le tri (ORDER BY) et la comparaison au jeton suivent la même collation : les sessions sont
+     * en NLS_SORT = NLS_COMP = BINARY (hibernate.hikari.connectionInitSql, persistence.xml). Avec un tri
+     * linguistique (FRENCH), les clés de tri textuelles répéteraient ou sauteraient des lignes entre les pages.
+     * @param em - EntityManager de la recherche
+     * @param resultType - type des résultats (entité ou projection)
+     * @param select - clauses SELECT et FROM de la requête JPQL
+     * @param where - condition de la recherche, ou null
+     * @param params - paramètres nommés de la condition
+     * @param keyset - ordre de tri de la recherche
+     * @param cursor - jeton de la page précédente ({@link Page#nextCursor()}), ou null pour la première page
+     * @param size - taille de page souhaitée, bornée par {@link #getMaxPageSize()} ; 0 pour la taille maximale
+     * @return la page de résultats
+     */
+    protected <R> Page<R> seek(EntityManager em, Class<R> resultType, String select, String where, Map<String, ?> params,
+                               Keyset<? super R> keyset, String cursor, int size) {
+        int limit = size <= 0 ? maxPageSize : Math.min(size, maxPageSize);
+        Page.Key after = Page.Key.decode(cursor);
+
+        List<String> conditions = new ArrayList<>(2);
+        if (where != null) {
+            conditions.add("(" + where + ")");
+        }
+        if (after != null) {
+            conditions.add("(" + keyset.sortPath() + " > :seekKey OR (" + keyset.sortPath() + " = :seekKey AND "
+                    + keyset.idPath() + " > :seekId))");
+        }
+        String ql = select
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY " + keyset.sortPath() + ", " + keyset.idPath();
+
+        TypedQuery<R> query = em.createQuery(ql, resultType);
+        params.forEach(query::setParameter);
+        if (after != null) {
+            query.setParameter("seekKey", after.sortKey());
+            query.setParameter("seekId", after.id());
+        }
+        List<R> rows = query.setMaxResults(limit + 1).getResultList(); // un de plus : y a-t-il une page suivante ?
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<R> items = rows.subList(0, limit);
+        return new Page<>(items, keyset.keyOf().apply(items.getLast()).encode());
+    }
+
+    /**
+     * Ordre de tri d'une recherche paginée par clé.
+     * @param sortPath - chemin JPQL de la clé de tri (non nulle)
+     * @param idPath - chemin JPQL de l'identifiant, qui départage les égalités
+     * @param keyOf - position d'un résultat dans cet ordre
+     */
+    public record Keyset<R>(String sortPath, String idPath, Function<R, Page.Key> keyOf) {
+    }
+
+    /**
+     * @return le graphe d'entité nommé correspondant au plan, ou null pour le chargement par défaut
+     * @throws IllegalArgumentException si l'entité ne déclare pas de graphe pour ce plan
+     */
+    private EntityGraph<?> entityGraph(FetchPlan plan, EntityManager em) {
+        String graphName = plan == null ? null : plan.graphName(entityName(em));
+        return graphName == null ? null : em.getEntityGraph(graphName);
+    }
+
+    /**
+     * Méthode de recherche d'un objet en posant un verrou de ligne (SELECT ... FOR UPDATE).
+     * Les entités versionnées sont protégées par verrouillage optimiste : ce verrou ne se justifie que pour
+     * sérialiser explicitement des écritures très disputées ; les lectures passent par findById.
+     * Doit être appelée dans une transaction.
+     * @param id - identifiant de l'objet recherché
+     * @param timeout - attente maximale du verrou : {@link Timeouts#NO_WAIT} (NOWAIT),
+     *                {@link Timeouts#SKIP_LOCKED} (SKIP LOCKED : null si la ligne est verrouillée),
+     *                {@link Timeouts#WAIT_FOREVER} ou une durée
+     * @param em - EntityManager de la transaction courante
+     * @return l'objet verrouillé, ou null s'il n'existe pas (ou est verrouillé, en SKIP LOCKED)
+     */
+    public T findForUpdate(Integer id, Timeout timeout, EntityManager em) {
+        if (id == null) return null;
+        return em.find(entityClass, id, LockModeType.PESSIMISTIC_WRITE, timeout);
+    }
+
+    /**
+     * Méthode de recherche de plusieurs objets par leurs identifiants.
+     * Les objets déjà présents dans le contexte de persistance sont servis sans requête ; les autres
+     * sont chargés par tranches de {@value #IN_LIST_LIMIT} identifiants (limite des listes IN d'Oracle).
+     * @param ids - identifiants recherchés
+     * @return les objets trouvés, dans l'ordre des identifiants demandés (sans doublons ni identifiants inconnus)
+     */
+    public List<T> findByIds(Collection<Integer> ids) {
+        if (ids == null || ids.isEmpty()) return List.of();
+        List<Integer> distinct = ids.stream().filter(Objects::nonNull).distinct().toList();
+
+        return inReadScope(em -> em.unwrap(Session.class)
+                .byMultipleIds(entityClass)
+                .enableSessionCheck(true)
+                .enableOrderedReturn(true)
+                .withBatchSize(IN_LIST_LIMIT)
+                .multiLoad(distinct)
+                .stream()
+                .filter(Objects::nonNull) // identifiants sans objet correspondant
+                .toList());
+    }
+
     /**
      * Vérifie si un objet avec l'ID donné existe.
      * @param id the ID to check
      * @return true si l'objet existe, false sinon
      */
     public boolean exists(Integer id) {
-        return getEntityManager().find(Entity.class, id) != null;
+        return inReadScope(em -> em.find(entityClass, id) != null);
     }
 
     /**
@@ -35,8 +439,30 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @return Long — le nombre d'objets
      */
     public Long count() {
-        Class<T> entityClass = (Class<T>) getEntityManager().getClass();
-        String ql = "SELECT COUNT(e) FROM " + entityClass.getSimpleName() + " e";
-        return getEntityManager().createQuery(ql, Long.class).getSingleResult();
+        return inReadScope(em -> {
+            String ql = "SELECT COUNT(e) FROM " + entityName(em) + " e";
+            return em.createQuery(ql, Long.class).getSingleResult();
+        });
+    }
+
+    protected String entityName(EntityManager em) {
+        return em.getMetamodel().entity(entityClass).getName();
+    }
+
+    private static void flushAndClear(EntityManager em) {
+        em.flush();
+        em.clear();
+    }
+
+    /**
+     * Découpe une collection en tranches de taille maximale donnée, sans doublons.
+     */
+    protected static <E> List<List<E>> chunks(Collection<E> items, int size) {
+        List<E> distinct = items.stream().distinct().toList();
+        List<List<E>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += size) {
+            chunks.add(distinct.subList(from, Math.min(from + size, distinct.size())));
+        }
+        return chunks;
     }
 }
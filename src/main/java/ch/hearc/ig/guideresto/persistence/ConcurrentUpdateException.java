@@ -0,0 +1,40 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.io.Serial;
+
+/**
+ * Levée lorsqu'un objet a été modifié ou supprimé par une autre transaction depuis qu'il a été lu
+ * (échec du contrôle de version optimiste). La transaction a été annulée : l'appelant doit recharger
+ * l'objet avant de réappliquer sa modification, par exemple via
+ * {@link ch.hearc.ig.guideresto.persistence.jpa.JpaUtils#updateWithRetry}.
+ */
+public class ConcurrentUpdateException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String entityName;
+    /** Identifiant de type quelconque, pas forcément sérialisable : il reste dans le message de l'exception. */
+    private final transient Object id;
+
+    public ConcurrentUpdateException(String entityName, Object id, Throwable cause) {
+        super("Conflit de mise à jour : " + (entityName == null ? "objet" : entityName)
+                + (id == null ? "" : " #" + id) + " a été modifié par une autre transaction", cause);
+        this.entityName = entityName;
+        this.id = id;
+    }
+
+    /**
+     * @return le nom de l'entité en conflit, ou null s'il n'est pas connu
+     */
+    public String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * @return l'identifiant de l'objet en conflit, ou null s'il n'est pas connu (ou si l'exception a été désérialisée)
+     */
+    public Object getId() {
+        return id;
+    }
+}
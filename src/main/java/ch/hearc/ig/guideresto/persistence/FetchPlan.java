@@ -0,0 +1,31 @@
+package ch.hearc.ig.guideresto.persistence;
+
+/**
+ * Plan de chargement d'une recherche : détermine quelles associations sont chargées avec les objets trouvés.
+ * Chaque plan correspond à un graphe d'entité nommé {@code <Entité>.<suffixe>} déclaré sur l'entité
+ * (par exemple {@code Restaurant.summary}) ; les associations hors du graphe restent chargées à la demande
+ * et ne sont donc plus accessibles une fois l'objet détaché.
+ */
+public enum FetchPlan {
+
+    /** Chargement défini par le mapping, sans graphe. */
+    DEFAULT(null),
+    /** Vue liste : l'objet et ses associations simples (ville, type...). */
+    SUMMARY("summary"),
+    /** Vue détail : vue liste et collections affichées avec l'objet (évaluations, notes, critères). */
+    DETAIL("detail");
+
+    private final String graphSuffix;
+
+    FetchPlan(String graphSuffix) {
+        this.graphSuffix = graphSuffix;
+    }
+
+    /**
+     * @param entityName - nom JPA de l'entité
+     * @return le nom du graphe d'entité du plan pour cette entité, ou null pour {@link #DEFAULT}
+     */
+    public String graphName(String entityName) {
+        return graphSuffix == null ? null : entityName + "." + graphSuffix;
+    }
+}
@@ -0,0 +1,86 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Page de résultats d'une recherche paginée par clé (keyset) : la page suivante reprend après le dernier
+ * élément de celle-ci, quel que soit le nombre d'éléments déjà parcourus, au lieu de sauter des lignes.
+ *
+ * @param items éléments de la page, dans l'ordre de tri
+ * @param nextCursor jeton à passer à la recherche pour obtenir la page suivante, ou null s'il n'y en a pas
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+
+    public Page {
+        items = List.copyOf(items);
+    }
+
+    public static <T> Page<T> empty() {
+        return new Page<>(List.of(), null);
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Position d'un élément dans l'ordre de tri (clé de tri, identifiant), encodée dans le jeton de page suivante.
+     * L'identifiant départage les éléments de même clé de tri.
+     *
+     * @param sortKey valeur de la clé de tri : String, Integer ou Date
+     * @param id identifiant de l'élément
+     */
+    public record Key(Object sortKey, Integer id) {
+
+        public Key {
+            if (sortKey == null || id == null) {
+                throw new IllegalArgumentException("Clé de pagination incomplète : " + sortKey + ", " + id);
+            }
+        }
+
+        /**
+         * @return le jeton opaque correspondant à cette position
+         */
+        public String encode() {
+            String value = switch (sortKey) {
+                case String s -> "S" + s;
+                case Integer i -> "I" + i;
+                case Date d -> "D" + d.getTime();
+                default -> throw new IllegalArgumentException("Type de clé de tri non supporté : " + sortKey.getClass().getName());
+            };
+            String raw = id + ":" + value;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @param token - jeton produit par {@link #encode()}
+         * @return la position encodée, ou null si le jeton est null ou vide (première page)
+         * @throws IllegalArgumentException si le jeton est invalide
+         */
+        public static Key decode(String token) {
+            if (token == null || token.isBlank()) return null;
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.indexOf(':');
+                Integer id = Integer.valueOf(raw.substring(0, separator));
+                String value = raw.substring(separator + 2);
+                Object sortKey = switch (raw.charAt(separator + 1)) {
+                    case 'S' -> value;
+                    case 'I' -> Integer.valueOf(value);
+                    case 'D' -> new Date(Long.parseLong(value));
+                    default -> throw new IllegalArgumentException("Type de clé inconnu");
+                };
+                return new Key(sortKey, id);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Jeton de pagination invalide : " + token, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ch.hearc.ig.guideresto.persistence.jpa;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Métriques du cache de second niveau et du cache de requêtes d'Hibernate, à partir des statistiques de la SessionFactory
+ * (activées par {@code hibernate.generate_statistics} dans le persistence.xml).
+ */
+public final class CacheMetrics {
+
+    private CacheMetrics() {
+    }
+
+    /**
+     * Retourne l'état de toutes les régions du cache de second niveau.
+     * @return une entrée par région, triées par nom, ou une liste vide si JPA n'est pas encore démarré
+     */
+    public static List<RegionSnapshot> snapshot() {
+        Statistics statistics = statistics();
+        if (statistics == null) return List.of();
+
+        List<RegionSnapshot> regions = new ArrayList<>();
+        String[] names = statistics.getSecondLevelCacheRegionNames();
+        Arrays.sort(names);
+        for (String name : names) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(name);
+            if (region != null) {
+                regions.add(new RegionSnapshot(name, region.getHitCount(), region.getMissCount(),
+                        region.getPutCount(), region.getElementCountInMemory()));
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Retourne le cumul de toutes les régions du cache de second niveau.
+     * @return le cumul, ou null si JPA n'est pas encore démarré
+     */
+    public static RegionSnapshot total() {
+        Statistics statistics = statistics();
+        if (statistics == null) return null;
+        return new RegionSnapshot("total", statistics.getSecondLevelCacheHitCount(),
+                statistics.getSecondLevelCacheMissCount(), statistics.getSecondLevelCachePutCount(),
+                RegionSnapshot.UNKNOWN);
+    }
+
+    /**
+     * Retourne l'utilisation du cache par chaque requête nommée cacheable.
+     * @return une entrée par requête nommée cacheable, triées par nom, ou une liste vide si JPA n'est pas encore démarré
+     */
+    public static List<QuerySnapshot> queries() {
+        EntityManagerFactory factory = JpaUtils.currentFactory();
+        if (factory == null || !factory.isOpen()) return List.of();
+        SessionFactoryImplementor sessionFactory = factory.unwrap(SessionFactoryImplementor.class);
+        Statistics statistics = sessionFactory.getStatistics();
+
+        List<QuerySnapshot> queries = new ArrayList<>();
+        sessionFactory.getQueryEngine().getNamedObjectRepository().visitSqmQueryMementos(memento -> {
+            if (Boolean.TRUE.equals(memento.getCacheable())) {
+                // les statistiques de requêtes sont indexées par le texte HQL
+                QueryStatistics query = statistics.getQueryStatistics(memento.getHqlString());
+                queries.add(new QuerySnapshot(memento.getRegistrationName(), memento.getCacheRegion(),
+                        query.getCacheHitCount(), query.getCacheMissCount(), query.getCachePutCount(),
+                        query.getExecutionCount()));
+            }
+        });
+        queries.sort(Comparator.comparing(QuerySnapshot::name));
+        return queries;
+    }
+
+    private static Statistics statistics() {
+        EntityManagerFactory factory = JpaUtils.currentFactory();
+        if (factory == null || !factory.isOpen()) return null;
+        return factory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Utilisation du cache par une requête nommée.
+     * @param region - région de cache de la requête, null pour la région par défaut
+     * @param hits - exécutions servies par le cache
+     * @param misses - exécutions absentes du cache, faites en base
+     * @param puts - résultats ajoutés au cache
+     * @param executions - exécutions en base
+     */
+    public record QuerySnapshot(String name, String region, long hits, long misses, long puts, long executions) {
+
+        public double hitRatio() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) hits / reads;
+        }
+
+        @Override
+        public String toString() {
+            return name + " [hits=" + hits + ", misses=" + misses + ", ratio=" + String.format("%.1f%%", hitRatio() * 100)
+                    + ", puts=" + puts + ", executions=" + executions + "]";
+        }
+    }
+
+    /**
+     * État d'une région du cache à un instant donné.
+     * @param hits - lectures servies par le cache
+     * @param misses - lectures absentes du cache, faites en base
+     * @param puts - objets ajoutés au cache
+     * @param elements - objets présents en mémoire, ou {@link #UNKNOWN}
+     */
+    public record RegionSnapshot(String region, long hits, long misses, long puts, long elements) {
+
+        public static final long UNKNOWN = CacheRegionStatistics.NO_EXTENDED_STAT_SUPPORT_RETURN;
+
+        /**
+         * @return la part des lectures servies par le cache, entre 0 et 1 (0 si aucune lecture)
+         */
+        public double hitRatio() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) hits / reads;
+        }
+
+        @Override
+        public String toString() {
+            return region + " [hits=" + hits + ", misses=" + misses + ", ratio=" + String.format("%.1f%%", hitRatio() * 100)
+                    + ", puts=" + puts + (elements == UNKNOWN ? "" : ", elements=" + elements) + "]";
+        }
+    }
+}
@@ -1,36 +1,172 @@
 package ch.hearc.ig.guideresto.persistence.jpa;
 
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+import ch.hearc.ig.guideresto.persistence.ConcurrentUpdateException;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.Persistence;
+import jakarta.persistence.PessimisticLockException;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Gestion des unités de travail JPA.
+ * Chaque thread travaille avec son propre EntityManager, lié au thread le temps d'une portée
+ * ({@link #fromTransaction(Function)}, {@link #inReadScope(Function)}, {@link #inReadOnly(Function)}) puis fermé à la sortie de celle-ci.
+ * Les portées imbriquées réutilisent l'EntityManager de la portée englobante.
+ */
 public class JpaUtils {
 
-    private static EntityManagerFactory emf;
-    private static EntityManager em;
+    private static final Logger LOG = LoggerFactory.getLogger(JpaUtils.class);
+    private static final String PERSISTENCE_UNIT = "guideRestoJPA";
 
+    /** Nombre maximal d'exécutions d'une transaction qui échoue de manière transitoire. */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 1_000;
+    /** ORA-00054 (NOWAIT), ORA-00060 (deadlock), ORA-08177 (sérialisation), ORA-30006 (WAIT expiré). */
+    private static final Set<Integer> TRANSIENT_ORACLE_ERRORS = Set.of(54, 60, 8177, 30006);
+    /** Nom de produit renvoyé par les métadonnées JDBC d'une base Oracle. */
+    private static final String ORACLE = "Oracle";
 
+    private static volatile EntityManagerFactory emf;
+    private static final ThreadLocal<EntityManager> CURRENT = new ThreadLocal<>();
+    /** Actions à exécuter à la fermeture, avant celle de la fabrique (dernière enregistrée, première exécutée). */
+    private static final Deque<Runnable> CLOSE_ACTIONS = new ConcurrentLinkedDeque<>();
+
+    private JpaUtils() {
+    }
+
+    /**
+     * Retourne l'EntityManager de l'unité de travail liée au thread courant.
+     * @return l'EntityManager courant
+     * @throws IllegalStateException si aucune portée n'est ouverte sur ce thread
+     */
     public static EntityManager getEntityManager() {
+        EntityManager em = CURRENT.get();
         if (em == null || !em.isOpen()) {
-            if (emf == null) {
-                emf = Persistence.createEntityManagerFactory("guideRestoJPA");
-            }
-            em = emf.createEntityManager();
+            throw new IllegalStateException("Aucune unité de travail ouverte sur ce thread : utiliser inTransaction ou inReadScope");
         }
         return em;
     }
 
+    /**
+     * Exécute un traitement dans une transaction.
+     * Si une transaction est déjà active sur le thread, le traitement y participe simplement.
+     * @param consumer - traitement à exécuter avec l'EntityManager de l'unité de travail
+     * @see #fromTransaction(Function)
+     */
     public static void inTransaction(Consumer<EntityManager> consumer) {
-        EntityManager em = JpaUtils.getEntityManager();
+        fromTransaction(em -> {
+            consumer.accept(em);
+            return null;
+        });
+    }
+
+    /**
+     * Exécute un traitement dans une transaction et retourne son résultat.
+     * En cas d'échec transitoire (deadlock, échec de sérialisation, attente de verrou expirée), la transaction
+     * est annulée puis rejouée dans une nouvelle unité de travail après une attente aléatoire croissante.
+     * Le traitement peut donc être exécuté plusieurs fois : il doit créer lui-même les entités qu'il persiste.
+     * Si une unité de travail est déjà ouverte sur le thread, le traitement s'y exécute sans reprise,
+     * celle-ci étant à la charge de la portée englobante.
+     * @param work - traitement à exécuter avec l'EntityManager de l'unité de travail
+     * @return le résultat du traitement
+     * @throws ConcurrentUpdateException si un objet modifié a changé de version en base entre-temps
+     */
+    public static <R> R fromTransaction(Function<EntityManager, R> work) {
+        EntityManager current = CURRENT.get();
+        if (current != null && current.isOpen()) {
+            if (current.unwrap(Session.class).isDefaultReadOnly()) {
+                throw new IllegalStateException("Écriture impossible dans une unité de travail en lecture seule");
+            }
+            return transactional(current, work);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inScope(em -> transactional(em, work));
+            } catch (RuntimeException ex) {
+                ConcurrentUpdateException conflict = asConflict(ex);
+                if (conflict != null) {
+                    throw conflict; // rejouer tel quel écraserait la modification concurrente
+                }
+                if (attempt >= MAX_ATTEMPTS || !isTransient(ex)) {
+                    throw ex;
+                }
+                LOG.warn("Échec transitoire de la transaction (tentative {}/{}) : {}", attempt, MAX_ATTEMPTS, ex.getMessage());
+                backOff(attempt, ex);
+            }
+        }
+    }
+
+    /**
+     * Applique une modification à la version courante d'un objet : l'objet est relu dans la transaction,
+     * modifié, puis écrit avec contrôle de version. En cas de conflit avec une autre transaction, l'objet est
+     * relu et la modification réappliquée, au plus {@value #MAX_ATTEMPTS} fois.
+     * La modification doit donc pouvoir être rejouée sur un état plus récent de l'objet.
+     * Appelée dans une unité de travail déjà ouverte, la modification n'est appliquée qu'une fois.
+     * @param entityClass - classe de l'objet à modifier
+     * @param id - identifiant de l'objet
+     * @param changes - modification à appliquer à l'objet géré
+     * @return l'objet modifié (détaché au retour, avec sa nouvelle version), ou null s'il n'existe pas
+     * @throws ConcurrentUpdateException si le conflit persiste après la dernière tentative
+     */
+    public static <T> T updateWithRetry(Class<T> entityClass, Object id, BiConsumer<EntityManager, T> changes) {
+        Function<EntityManager, T> work = em -> {
+            T entity = em.find(entityClass, id);
+            if (entity != null) {
+                changes.accept(em, entity);
+            }
+            return entity;
+        };
+        EntityManager current = CURRENT.get();
+        if (current != null && current.isOpen()) {
+            return fromTransaction(work);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fromTransaction(work);
+            } catch (ConcurrentUpdateException ex) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw ex;
+                }
+                LOG.info("Conflit de version sur {} #{}, nouvelle lecture (tentative {}/{})",
+                        entityClass.getSimpleName(), id, attempt, MAX_ATTEMPTS);
+            }
+        }
+    }
+
+    private static <R> R transactional(EntityManager em, Function<EntityManager, R> work) {
         EntityTransaction transaction = em.getTransaction();
+        if (transaction.isActive()) {
+            return work.apply(em); // transaction englobante : commit à sa charge
+        }
         try {
             transaction.begin();
-            consumer.accept(em);
+            R result = work.apply(em);
             em.flush();
             transaction.commit();
+            return result;
         } catch (Exception ex) {
             if (transaction.isActive()) {
                 transaction.rollback();
@@ -38,17 +174,214 @@ public class JpaUtils {
             throw ex;
         }
     }
-    public static void close() {
+
+    /**
+     * Indique si l'exception (ou l'une de ses causes) correspond à un échec transitoire
+     * qui a des chances de réussir une fois rejoué.
+     */
+    private static boolean isTransient(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LockTimeoutException
+                    || cause instanceof PessimisticLockException
+                    || cause instanceof LockAcquisitionException) {
+                return true;
+            }
+            if (cause instanceof SQLException sql
+                    && (TRANSIENT_ORACLE_ERRORS.contains(sql.getErrorCode()) || "40001".equals(sql.getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Traduit un échec du contrôle de version (quelle que soit la couche qui l'a levé) en {@link ConcurrentUpdateException}.
+     * @return l'exception de conflit, ou null si l'exception n'est pas un conflit de version
+     */
+    private static ConcurrentUpdateException asConflict(Throwable ex) {
+        boolean conflict = false;
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrentUpdateException translated) {
+                return translated;
+            }
+            if (cause instanceof StaleObjectStateException stale) {
+                return new ConcurrentUpdateException(stale.getEntityName(), stale.getIdentifier(), ex);
+            }
+            if (cause instanceof OptimisticLockException optimistic && optimistic.getEntity() != null) {
+                Object entity = optimistic.getEntity();
+                Object id = entity instanceof IBusinessObject business ? business.getId() : null;
+                return new ConcurrentUpdateException(entity.getClass().getSimpleName(), id, ex);
+            }
+            conflict |= cause instanceof OptimisticLockException || cause instanceof StaleStateException;
+        }
+        return conflict ? new ConcurrentUpdateException(null, null, ex) : null;
+    }
+
+    /**
+     * Attente exponentielle avec gigue (« equal jitter ») avant de rejouer une transaction.
+     */
+    private static void backOff(int attempt, RuntimeException cause) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+
+    /**
+     * Exécute une lecture dans une unité de travail et retourne son résultat.
+     * Les entités retournées sont détachées dès que la portée la plus externe se termine.
+     * @param work - lecture à exécuter
+     * @return le résultat de la lecture
+     */
+    public static <R> R inReadScope(Function<EntityManager, R> work) {
+        return inScope(work);
+    }
+
+    /**
+     * Exécute une lecture dans une transaction en lecture seule et retourne son résultat.
+     * La session est en lecture seule (pas de copie des entités pour le dirty checking), le flush
+     * est manuel, la connexion JDBC est marquée read-only avant le début de la transaction et, sur
+     * Oracle, la transaction est ouverte par SET TRANSACTION READ ONLY.
+     * Appelée depuis une unité de travail déjà ouverte, la lecture s'y exécute sans en changer le mode.
+     * @param work - lecture à exécuter
+     * @return le résultat de la lecture
+     */
+    public static <R> R inReadOnly(Function<EntityManager, R> work) {
+        EntityManager current = CURRENT.get();
+        if (current != null && current.isOpen()) {
+            return work.apply(current);
+        }
+        return inScope(em -> {
+            Session session = em.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            // le mode read-only se fixe avant le début de la transaction ; Hikari le rétablit au retour au pool
+            session.doWork(connection -> connection.setReadOnly(true));
+            EntityTransaction transaction = em.getTransaction();
+            try {
+                transaction.begin();
+                session.doWork(JpaUtils::startReadOnlyTransaction);
+                R result = work.apply(em);
+                transaction.commit();
+                return result;
+            } catch (Exception ex) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * Méthode de déclaration de la transaction courante en lecture seule.
+     * Le pilote Oracle se contente de mémoriser setReadOnly : seul un SET TRANSACTION READ ONLY,
+     * premier ordre de la transaction, la rend effectivement en lecture seule.
+     * @param connection - connexion de la transaction qui vient de commencer
+     * @throws SQLException si l'ordre échoue
+     */
+    private static void startReadOnlyTransaction(Connection connection) throws SQLException {
+        if (ORACLE.equals(connection.getMetaData().getDatabaseProductName())) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET TRANSACTION READ ONLY");
+            }
+        }
+    }
+
+    /**
+     * Lie un EntityManager au thread le temps du traitement, ou réutilise celui déjà lié.
+     * Seule la portée qui a ouvert l'EntityManager le ferme.
+     */
+    private static <R> R inScope(Function<EntityManager, R> work) {
+        EntityManager current = CURRENT.get();
+        if (current != null && current.isOpen()) {
+            return work.apply(current);
+        }
+        EntityManager em = getEntityManagerFactory().createEntityManager();
+        CURRENT.set(em);
+        try {
+            return work.apply(em);
+        } finally {
+            CURRENT.remove();
+            em.close();
+        }
+    }
+
+    private static EntityManagerFactory getEntityManagerFactory() {
+        EntityManagerFactory factory = emf;
+        if (factory == null) {
+            synchronized (JpaUtils.class) {
+                factory = emf;
+                if (factory == null) {
+                    factory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+                    emf = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Vide une région du cache de requêtes. Les résultats portant sur des tables modifiées depuis leur mise en cache
+     * ne sont de toute façon plus servis ; les retirer libère la place qu'ils occupent sans attendre leur expiration.
+     * @param region - nom de la région, tel que déclaré dans ehcache.xml
+     */
+    public static void evictQueryRegion(String region) {
+        EntityManagerFactory factory = emf;
+        if (factory != null && factory.isOpen()) {
+            factory.unwrap(SessionFactory.class).getCache().evictQueryRegion(region);
+        }
+    }
+
+    /**
+     * @return la fabrique d'EntityManager si elle a déjà été créée, sans la créer
+     */
+    static EntityManagerFactory currentFactory() {
+        return emf;
+    }
+
+    /**
+     * Enregistre une action à exécuter à la fermeture, tant que la fabrique est encore ouverte :
+     * par exemple vider un tampon d'écriture différée. Chaque action n'est exécutée qu'une fois.
+     * @param action - action de fermeture
+     */
+    public static void onClose(Runnable action) {
+        CLOSE_ACTIONS.push(action);
+    }
+
+    public static synchronized void close() {
+        for (Runnable action = CLOSE_ACTIONS.poll(); action != null; action = CLOSE_ACTIONS.poll()) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                LOG.warn("Échec d'une action de fermeture : {}", e.getMessage(), e);
+            }
+        }
+        EntityManager em = CURRENT.get();
         if (em != null && em.isOpen()) {
             em.close();
         }
+        CURRENT.remove();
         if (emf != null && emf.isOpen()) {
+            PoolMetrics.Snapshot pool = PoolMetrics.snapshot();
+            if (pool != null) {
+                LOG.info("Pool de connexions à la fermeture : {}", pool);
+            }
+            for (CacheMetrics.RegionSnapshot region : CacheMetrics.snapshot()) {
+                LOG.info("Cache de second niveau à la fermeture : {}", region);
+            }
+            for (CacheMetrics.QuerySnapshot query : CacheMetrics.queries()) {
+                LOG.info("Cache de requêtes à la fermeture : {}", query);
+            }
             emf.close();
         }
     }
+
     public static void init() {
-        if (emf == null) {
-            emf = Persistence.createEntityManagerFactory("guideRestoJPA");
-        }
+        getEntityManagerFactory();
     }
 }
@@ -0,0 +1,109 @@
+package ch.hearc.ig.guideresto.persistence.jpa;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métriques du pool de connexions HikariCP.
+ * Hikari instancie cette classe par réflexion via la propriété {@code hibernate.hikari.metricsTrackerFactory}
+ * du persistence.xml ; les valeurs sont ensuite consultables à tout moment via {@link #snapshot()}.
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    /** Bornes supérieures (en microsecondes) des classes de l'histogramme des temps d'acquisition. */
+    private static final long[] ACQUIRE_BUCKETS_MICROS = {100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000};
+
+    private static volatile Tracker tracker;
+
+    public PoolMetrics() {
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        Tracker created = new Tracker(poolName, poolStats);
+        tracker = created;
+        return created;
+    }
+
+    /**
+     * Retourne l'état courant du pool.
+     * @return les métriques du pool, ou null si le pool n'est pas encore démarré
+     */
+    public static Snapshot snapshot() {
+        Tracker current = tracker;
+        return current == null ? null : current.snapshot();
+    }
+
+    /**
+     * État du pool à un instant donné.
+     * @param acquireBucketsMicros - bornes supérieures des classes de l'histogramme, en microsecondes
+     * @param acquireCounts - nombre d'acquisitions par classe, la dernière regroupant les valeurs hors bornes
+     */
+    public record Snapshot(String poolName, int active, int idle, int pending, int total, int max,
+                           long acquireCount, long acquireMaxMicros, long[] acquireBucketsMicros,
+                           long[] acquireCounts, long timeouts) {
+
+        @Override
+        public String toString() {
+            StringBuilder histogram = new StringBuilder();
+            for (int i = 0; i < acquireCounts.length; i++) {
+                histogram.append(i < acquireBucketsMicros.length ? "<=" + acquireBucketsMicros[i] + "us" : ">" + acquireBucketsMicros[i - 1] + "us")
+                        .append('=').append(acquireCounts[i]).append(' ');
+            }
+            return poolName + " [active=" + active + ", idle=" + idle + ", pending=" + pending
+                    + ", total=" + total + "/" + max + ", timeouts=" + timeouts
+                    + ", acquisitions=" + acquireCount + ", max=" + acquireMaxMicros + "us] "
+                    + histogram.toString().trim();
+        }
+    }
+
+    private static final class Tracker implements IMetricsTracker {
+        private final String poolName;
+        private final PoolStats poolStats;
+        private final LongAdder[] acquireCounts = new LongAdder[ACQUIRE_BUCKETS_MICROS.length + 1];
+        private final LongAdder timeouts = new LongAdder();
+        private volatile long acquireMaxMicros;
+
+        private Tracker(String poolName, PoolStats poolStats) {
+            this.poolName = poolName;
+            this.poolStats = poolStats;
+            for (int i = 0; i < acquireCounts.length; i++) {
+                acquireCounts[i] = new LongAdder();
+            }
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(elapsedAcquiredNanos);
+            int bucket = 0;
+            while (bucket < ACQUIRE_BUCKETS_MICROS.length && micros > ACQUIRE_BUCKETS_MICROS[bucket]) {
+                bucket++;
+            }
+            acquireCounts[bucket].increment();
+            if (micros > acquireMaxMicros) {
+                acquireMaxMicros = micros; // approximation suffisante pour un maximum indicatif
+            }
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+
+        private Snapshot snapshot() {
+            long[] counts = new long[acquireCounts.length];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = acquireCounts[i].sum();
+                total += counts[i];
+            }
+            return new Snapshot(poolName, poolStats.getActiveConnections(), poolStats.getIdleConnections(),
+                    poolStats.getPendingThreads(), poolStats.getTotalConnections(), poolStats.getMaxConnections(),
+                    total, acquireMaxMicros, ACQUIRE_BUCKETS_MICROS.clone(), counts, timeouts.sum());
+        }
+    }
+}
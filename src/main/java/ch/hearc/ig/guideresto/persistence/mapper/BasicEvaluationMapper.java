@@ -1,19 +1,31 @@
 package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.LikeCount;
+import ch.hearc.ig.guideresto.business.LikeVoter;
 import ch.hearc.ig.guideresto.business.Restaurant;
-import ch.hearc.ig.guideresto.business.RestaurantType;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.Page;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
+import org.hibernate.jpa.HibernateHints;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
 
 public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
 
+    private static final Keyset<BasicEvaluation> BY_VISIT_DATE =
+            new Keyset<>("be.visitDate", "be.id", eval -> new Page.Key(eval.getVisitDate(), eval.getId()));
+
     public BasicEvaluationMapper() {
+        super(BasicEvaluation.class);
     }
 
     /**
@@ -39,14 +51,15 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
         return true;
     }
     /**
-     * Méthode de suppression en base de donnée
+     * Méthode de suppression en base de donnée. Les compteurs du restaurant (STATS_RESTAURANTS) ne sont pas
+     * décrémentés : relancer {@code EvaluationService.rebuildRatings()} après avoir supprimé des likes.
      * @param eval - l'objet BasicEvaluation à supprimer
      * @return true si la suppression a réussi, false sinon
      */
     @Override
     public boolean delete(BasicEvaluation eval, EntityManager em) {
         // Récupérer l'entité gérée par l'EM
-        RestaurantType managed = em.find(RestaurantType.class, eval.getId(), LockModeType.PESSIMISTIC_WRITE);
+        BasicEvaluation managed = em.find(BasicEvaluation.class, eval.getId());
         if (managed != null) {
             em.remove(managed);
         }
@@ -54,13 +67,13 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
     }
 
     /**
-     * Méthode de suppression en base de donnée
+     * Méthode de suppression en base de donnée, sans mise à jour des compteurs du restaurant (voir {@link #delete})
      * @param id - identifiant de l'objet BasicEvaluation à supprimer
      * @return true si la suppression a réussi, false sinon
      */
     @Override
     public boolean deleteById(Integer id, EntityManager em) {
-        BasicEvaluation entity = em.find(BasicEvaluation.class, id, LockModeType.PESSIMISTIC_WRITE);
+        BasicEvaluation entity = em.find(BasicEvaluation.class, id);
         if (entity != null) {
             em.remove(entity);
         }
@@ -74,9 +87,9 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
      */
     public BasicEvaluation findById(Integer id) {
         if (id == null) return null;
-        try (EntityManager em = getEntityManager()) {
-            return em.find(BasicEvaluation.class, id, LockModeType.PESSIMISTIC_WRITE);
-        }
+        return inReadScope(em -> {
+            return em.find(BasicEvaluation.class, id);
+        });
     }
 
     /**
@@ -85,10 +98,23 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
      */
     @Override
     public List<BasicEvaluation> findAll() {
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createQuery("SELECT be FROM BasicEvaluation be", BasicEvaluation.class)
                     .getResultList();
-        }
+        });
+    }
+
+    /**
+     * Méthode de parcours en flux de toutes les évaluations basiques, en mémoire constante, triées par date
+     * (exports, recalculs). Le flux doit être fermé avant la fin de l'unité de travail.
+     * @param fetchSize - nombre de lignes lues par aller-retour avec la base
+     * @return le flux des BasicEvaluations, en lecture seule
+     */
+    @Override
+    public Stream<BasicEvaluation> streamAll(int fetchSize) {
+        EntityManager em = getEntityManager();
+        return stream(em.createQuery("SELECT be FROM BasicEvaluation be ORDER BY be.visitDate, be.id", BasicEvaluation.class),
+                fetchSize, em);
     }
 
     /**
@@ -98,11 +124,11 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
      */
     public List<BasicEvaluation> findByLikeRestaurant(Boolean likeRestaurant) {
         if (likeRestaurant == null) return List.of();
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("BasicEvaluation.findByLikeRestaurant", BasicEvaluation.class)
                     .setParameter("likeRestaurant", likeRestaurant)
                     .getResultList();
-        }
+        });
     }
 
     /**
@@ -112,11 +138,11 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
      */
     public List<BasicEvaluation> findByIpAddress(String ipAddress) {
         if (ipAddress == null || ipAddress.isEmpty()) return List.of();
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("BasicEvaluation.findByIpAddress", BasicEvaluation.class)
                     .setParameter("ipAddress", ipAddress)
                     .getResultList();
-        }
+        });
     }
 
     /**
@@ -126,11 +152,24 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
      */
     public List<BasicEvaluation> findByRestaurant(Restaurant restaurant) {
         if (restaurant == null) return List.of();
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("BasicEvaluation.findByRestaurant", BasicEvaluation.class)
                     .setParameter("restaurant", restaurant)
                     .getResultList();
-        }
+        });
+    }
+
+    /**
+     * Méthode de recherche d'une page des évaluations basiques d'un restaurant, de la plus ancienne à la plus récente
+     * @param restaurant - restaurant dont on veut les BasicEvaluations
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page de BasicEvaluations
+     */
+    public Page<BasicEvaluation> findPageByRestaurant(Restaurant restaurant, String cursor, int size) {
+        if (restaurant == null) return Page.empty();
+        return inReadScope(em -> seek(em, BasicEvaluation.class, "SELECT be FROM BasicEvaluation be",
+                "be.restaurant = :restaurant", Map.of("restaurant", restaurant), BY_VISIT_DATE, cursor, size));
     }
 
     /**
@@ -141,13 +180,57 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
      */
     public List<BasicEvaluation> findByIpAndRest(String ip, Integer restaurantId) {
         if (ip == null || ip.isEmpty() || restaurantId == null) return List.of();
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("BasicEvaluation.findByIpAndRestaurant", BasicEvaluation.class)
                     .setParameter("ip", ip)
                     .setParameter("restaurantId", restaurantId)
                     .getResultList();
-        }
+        });
     }
 
-}
+    /**
+     * Méthode de recherche des auteurs des évaluations basiques depuis une date, sans charger les évaluations
+     * @param since - date de début, incluse
+     * @return les couples (adresse IP, restaurant), un par évaluation
+     */
+    public List<LikeVoter> findVotersSince(Date since) {
+        if (since == null) return List.of();
+        return inReadScope(em -> {
+            return em.createNamedQuery("BasicEvaluation.votersSince", LikeVoter.class)
+                    .setParameter("since", since)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, getFetchSize())
+                    .getResultList();
+        });
+    }
 
+    /**
+     * Méthode de comptage en base des likes et dislikes d'un restaurant
+     * @param restaurantId - identifiant du restaurant
+     * @return les compteurs du restaurant, à zéro s'il n'a aucune évaluation basique
+     */
+    public LikeCount countLikes(Integer restaurantId) {
+        if (restaurantId == null) return null;
+        return countLikes(List.of(restaurantId)).getOrDefault(restaurantId, LikeCount.none(restaurantId));
+    }
+
+    /**
+     * Méthode de comptage en base des likes et dislikes de plusieurs restaurants, par requêtes groupées
+     * de {@value #IN_LIST_LIMIT} restaurants au plus
+     * @param restaurantIds - identifiants des restaurants
+     * @return les compteurs par identifiant de restaurant ; les restaurants sans évaluation basique sont absents
+     */
+    public Map<Integer, LikeCount> countLikes(Collection<Integer> restaurantIds) {
+        if (restaurantIds == null || restaurantIds.isEmpty()) return Map.of();
+
+        return inReadScope(em -> {
+            Map<Integer, LikeCount> counts = new HashMap<>();
+            for (List<Integer> chunk : chunks(restaurantIds, IN_LIST_LIMIT)) {
+                em.createNamedQuery("BasicEvaluation.countByRestaurants", LikeCount.class)
+                        .setParameter("restaurantIds", chunk)
+                        .getResultList()
+                        .forEach(count -> counts.put(count.restaurantId(), count));
+            }
+            return counts;
+        });
+    }
+}
@@ -1,20 +1,32 @@
 package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.City;
-import ch.hearc.ig.guideresto.business.RestaurantType;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.Page;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
+import org.hibernate.Session;
 
 import java.util.List;
+import java.util.Map;
 
-import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
 
 public class CityMapper extends AbstractMapper<City> {
 
-
+    // ordre binaire des noms (sessions en NLS_SORT=BINARY), le même que celui de la comparaison au jeton
+    private static final Keyset<City> BY_NAME =
+            new Keyset<>("c.cityName", "c.id", city -> new Page.Key(city.getCityName(), city.getId()));
 
     public CityMapper() {
+        super(City.class);
+    }
+
+    /**
+     * Une ville n'entraîne aucune suppression en cascade : DELETE JPQL direct.
+     */
+    @Override
+    protected boolean supportsBulkDelete() {
+        return true;
     }
 
     /**
@@ -47,7 +59,7 @@ public class CityMapper extends AbstractMapper<City> {
     @Override
     public boolean delete(City city, EntityManager em) {
         // Récupérer l'entité gérée par l'EM
-        RestaurantType managed = em.find(RestaurantType.class, city.getId(), LockModeType.PESSIMISTIC_WRITE);
+        City managed = em.find(City.class, city.getId());
         if (managed != null) {
             em.remove(managed);
         }
@@ -61,7 +73,7 @@ public class CityMapper extends AbstractMapper<City> {
      */
     @Override
     public boolean deleteById(Integer id, EntityManager em) {
-        City entity = em.find(City.class, id, LockModeType.PESSIMISTIC_WRITE);
+        City entity = em.find(City.class, id);
         if (entity != null) {
             em.remove(entity);
         }
@@ -77,9 +89,9 @@ public class CityMapper extends AbstractMapper<City> {
     public City findById(Integer id) {
         if (id == null) return null;
 
-        try (EntityManager em = getEntityManager()) {
-            return em.find(City.class, id, LockModeType.PESSIMISTIC_WRITE);
-        }
+        return inReadScope(em -> {
+            return em.find(City.class, id);
+        });
     }
 
     /**
@@ -88,11 +100,21 @@ public class CityMapper extends AbstractMapper<City> {
      */
     @Override
     public List<City> findAll() {
-        try (EntityManager em = getEntityManager()) {
-            return em.createQuery("SELECT c FROM City c", City.class)
+        return inReadScope(em -> {
+            return em.createNamedQuery("City.findAll", City.class)
                     .getResultList();
-        }
+        });
     }
+    /**
+     * Méthode de recherche d'une page de villes, triées par nom
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page de villes
+     */
+    public Page<City> findPage(String cursor, int size) {
+        return inReadScope(em -> seek(em, City.class, "SELECT c FROM City c", null, Map.of(), BY_NAME, cursor, size));
+    }
+
     /**
      * Méthode de recherche d'une ville en base de données par code postal
      * @param zipCode - code postal
@@ -101,44 +123,34 @@ public class CityMapper extends AbstractMapper<City> {
     public List<City> findByZipCode(String zipCode) {
         if (zipCode == null || zipCode.isEmpty()) return List.of();
 
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("City.findByZipCode", City.class)
                     .setParameter("zipCode", "%" + zipCode + "%")
                     .getResultList();
-        }
+        });
     }
 
     /**
-     * Méthode de recherche d'une ville en base de données par nom de ville
+     * Méthode de recherche d'une ville par son nom, sans tenir compte de la casse ni des espaces autour.
+     * Passe par l'identifiant naturel (nom normalisé) : servi par le cache de second niveau une fois la ville connue.
      * @param name - nom de la ville
-     * @return la liste des villes trouvées
+     * @return la ville trouvée, ou null si elle n'existe pas
      */
     public City findByName(String name) {
-        if (name == null || name.isEmpty()) return null;
-
-        try (EntityManager em = getEntityManager()) {
-            return em.createNamedQuery("City.findByName", City.class)
-                    .setParameter("name", name)
-                    .getResultStream()
-                    .findFirst()
-                    .orElse(null);
-        }
+        if (name == null || name.isBlank()) return null;
+
+        return inReadScope(em -> {
+            return em.unwrap(Session.class)
+                    .bySimpleNaturalId(City.class)
+                    .load(City.normalizeName(name));
+        });
     }
     /**
-     * Méthode de vérification d'existence d'une ville en base de données par nom de ville
+     * Méthode de vérification d'existence d'une ville par nom de ville
      * @param name - nom de la ville
      * @return true ou false
      */
     public boolean existsByName(String name) {
-        if (name == null || name.isEmpty()) return false;
-
-        try (EntityManager em = getEntityManager()) {
-            Long count = em.createNamedQuery("City.existsByName", Long.class)
-                    .setParameter("name", name)
-                    .getSingleResult();
-            return count != null && count > 0;
-        }
+        return findByName(name) != null;
     }
-
-
 }
@@ -3,16 +3,24 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 import ch.hearc.ig.guideresto.business.CompleteEvaluation;
 import ch.hearc.ig.guideresto.business.Restaurant;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.FetchPlan;
+import ch.hearc.ig.guideresto.persistence.Page;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
 
 public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation> {
 
+    private static final Keyset<CompleteEvaluation> BY_VISIT_DATE =
+            new Keyset<>("ce.visitDate", "ce.id", eval -> new Page.Key(eval.getVisitDate(), eval.getId()));
+
     public CompleteEvaluationMapper() {
+        super(CompleteEvaluation.class);
     }
 
     /**
@@ -45,7 +53,7 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     @Override
     public boolean delete(CompleteEvaluation evaluation, EntityManager em) {
         // Récupérer l'entité gérée par l'EM
-        CompleteEvaluation managed = em.find(CompleteEvaluation.class, evaluation.getId(), LockModeType.PESSIMISTIC_WRITE);
+        CompleteEvaluation managed = em.find(CompleteEvaluation.class, evaluation.getId());
         if (managed != null) {
             em.remove(managed);
         }
@@ -59,7 +67,7 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
      */
     @Override
     public boolean deleteById(Integer id, EntityManager em) {
-        CompleteEvaluation entity = em.find(CompleteEvaluation.class, id, LockModeType.PESSIMISTIC_WRITE);
+        CompleteEvaluation entity = em.find(CompleteEvaluation.class, id);
         if (entity != null) {
             em.remove(entity);
         }
@@ -67,16 +75,12 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     }
 
     /**
-     * Méthode de recherche d'une évaluation complète en base de données par son identifiant.
+     * Méthode de recherche d'une évaluation complète en base de données par son identifiant, avec ses notes.
      * @param id - identifiant du Grade recherché
      * @return l'évaluation trouvée, ou null s'il n'existe pas
      */
     public CompleteEvaluation findById(Integer id) {
-        if (id == null) return null;
-
-        try (EntityManager em = getEntityManager()) {
-            return em.find(CompleteEvaluation.class, id, LockModeType.PESSIMISTIC_WRITE);
-        }
+        return findById(id, FetchPlan.DETAIL);
     }
 
     /**
@@ -85,12 +89,31 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
      */
     @Override
     public List<CompleteEvaluation> findAll() {
-        try (EntityManager em = getEntityManager()) {
-            return em.createQuery(
-                    "SELECT ce FROM CompleteEvaluation ce",
-                    CompleteEvaluation.class
-            ).getResultList();
-        }
+        return findAll(FetchPlan.DEFAULT);
+    }
+
+    /**
+     * Méthode de recherche de toutes les évaluations complètes en base de donnée
+     * @param plan - associations à charger avec les évaluations
+     * @return la liste des évaluations complètes trouvées
+     */
+    public List<CompleteEvaluation> findAll(FetchPlan plan) {
+        return inReadScope(em -> withFetchPlan(
+                em.createQuery("SELECT ce FROM CompleteEvaluation ce", CompleteEvaluation.class), plan, em
+        ).getResultList());
+    }
+
+    /**
+     * Méthode de parcours en flux de toutes les évaluations complètes, en mémoire constante (exports, recalculs).
+     * Chaque évaluation est détachée dès que la suivante est lue : ses notes sont chargées à la demande,
+     * tant qu'elle est l'évaluation courante. Le flux doit être fermé avant la fin de l'unité de travail.
+     * @param fetchSize - nombre de lignes lues par aller-retour avec la base
+     * @return le flux des évaluations complètes, en lecture seule
+     */
+    @Override
+    public Stream<CompleteEvaluation> streamAll(int fetchSize) {
+        EntityManager em = getEntityManager();
+        return stream(em.createQuery("SELECT ce FROM CompleteEvaluation ce", CompleteEvaluation.class), fetchSize, em);
     }
 
     /**
@@ -101,11 +124,11 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     public List<CompleteEvaluation> findByComment(String comment) {
         if (comment == null || comment.isEmpty()) return List.of();
 
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("CompleteEvaluation.findByComment", CompleteEvaluation.class)
                     .setParameter("comment", "%" + comment + "%")
                     .getResultList();
-        }
+        });
     }
 
     /**
@@ -116,26 +139,61 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     public List<CompleteEvaluation> findByUsername(String username) {
         if (username == null || username.isEmpty()) return List.of();
 
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("CompleteEvaluation.findByUsername", CompleteEvaluation.class)
                     .setParameter("username", "%" + username + "%")
                     .getResultList();
-        }
+        });
     }
     /**
-     * Méthode de recherche d'une évaluation complète en base de données par restaurant
+     * Méthode de recherche d'une évaluation complète en base de données par restaurant, avec les notes et leurs critères
      * @param restaurant - instance du restaurant
      * @return la liste des évaluations complètes trouvées
      */
     public List<CompleteEvaluation> findByRestaurant(Restaurant restaurant) {
+        return findByRestaurant(restaurant, FetchPlan.DETAIL);
+    }
+
+    /**
+     * Méthode de recherche d'une évaluation complète en base de données par restaurant
+     * @param restaurant - instance du restaurant
+     * @param plan - associations à charger avec les évaluations
+     * @return la liste des évaluations complètes trouvées
+     */
+    public List<CompleteEvaluation> findByRestaurant(Restaurant restaurant, FetchPlan plan) {
         if (restaurant == null) return List.of();
 
-        try (EntityManager em = getEntityManager()) {
-            return em.createNamedQuery("CompleteEvaluation.findByRestaurant", CompleteEvaluation.class)
-                    .setParameter("restaurant", restaurant)
-                    .getResultList();
-        }
+        return inReadScope(em -> withFetchPlan(em.createNamedQuery("CompleteEvaluation.findByRestaurant", CompleteEvaluation.class), plan, em)
+                .setParameter("restaurant", restaurant)
+                .getResultList());
+    }
+    /**
+     * Méthode de recherche d'une page des évaluations complètes d'un restaurant, de la plus ancienne à la plus récente.
+     * La page est d'abord lue sans ses collections (la pagination d'une jointure sur collection se ferait en mémoire),
+     * puis les associations du plan sont chargées pour les seules évaluations de la page.
+     * @param restaurant - instance du restaurant
+     * @param plan - associations à charger avec les évaluations
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page d'évaluations complètes
+     */
+    public Page<CompleteEvaluation> findPageByRestaurant(Restaurant restaurant, FetchPlan plan, String cursor, int size) {
+        if (restaurant == null) return Page.empty();
+
+        return inReadScope(em -> {
+            Page<CompleteEvaluation> page = seek(em, CompleteEvaluation.class, "SELECT ce FROM CompleteEvaluation ce",
+                    "ce.restaurant = :restaurant", Map.of("restaurant", restaurant), BY_VISIT_DATE, cursor, size);
+            if (plan != FetchPlan.DEFAULT && !page.isEmpty()) {
+                List<Integer> ids = page.items().stream().map(CompleteEvaluation::getId).toList();
+                // mêmes instances dans le contexte de persistance : leurs associations sont initialisées
+                withFetchPlan(em.createQuery("SELECT ce FROM CompleteEvaluation ce WHERE ce.id IN :ids", CompleteEvaluation.class), plan, em)
+                        .setParameter("ids", ids)
+                        .getResultList();
+            }
+            return page;
+        });
     }
+
     /**
      * Méthode de recherche d'une évaluation complète en base de données par restaurant et nom d'utilisateur
      * @param username - nom de l'utilisateur
@@ -145,7 +203,7 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     public CompleteEvaluation findByUserAndRest(String username, Integer restaurantId) {
         if (username == null || restaurantId == null) return null;
 
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createQuery(
                             "SELECT ce FROM CompleteEvaluation ce " +
                                     "WHERE ce.username = :username " +
@@ -157,7 +215,7 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
                     .getResultStream()
                     .findFirst()
                     .orElse(null);
-        }
+        });
     }
 }
 
@@ -1,18 +1,16 @@
 package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.EvaluationCriteria;
-import ch.hearc.ig.guideresto.business.RestaurantType;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
-import jakarta.persistence.NoResultException;
 
 import java.util.List;
 
-import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
 
 public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria> {
     public EvaluationCriteriaMapper() {
+        super(EvaluationCriteria.class);
     }
     /**
      * Méthode de persistence en base de donnée
@@ -43,7 +41,7 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
     @Override
     public boolean delete(EvaluationCriteria critere, EntityManager em) {
         // Récupérer l'entité gérée par l'EM
-        RestaurantType managed = em.find(RestaurantType.class, critere.getId(), LockModeType.PESSIMISTIC_WRITE);
+        EvaluationCriteria managed = em.find(EvaluationCriteria.class, critere.getId());
         if (managed != null) {
             em.remove(managed);
         }
@@ -56,7 +54,7 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
      */
     @Override
     public boolean deleteById(Integer id, EntityManager em) {
-        EvaluationCriteria entity = em.find(EvaluationCriteria.class, id, LockModeType.PESSIMISTIC_WRITE);
+        EvaluationCriteria entity = em.find(EvaluationCriteria.class, id);
         if (entity != null) {
             em.remove(entity);
         }
@@ -71,15 +69,9 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
     public EvaluationCriteria findById(Integer id) {
         if (id == null) return null;
 
-        try (EntityManager em = getEntityManager()) {
-            try {
-                return em.createNamedQuery("EvaluationCriteria.findById", EvaluationCriteria.class)
-                        .setParameter("id", id)
-                        .getSingleResult();
-            } catch (NoResultException e) {
-                return null;
-            }
-        }
+        return inReadScope(em -> {
+            return em.find(EvaluationCriteria.class, id); // servi par le cache de second niveau
+        });
     }
 
     /**
@@ -87,10 +79,10 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
      * @return la liste des critères d'évaluations trouvés
      */
     public List<EvaluationCriteria> findAll() {
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("EvaluationCriteria.findAll", EvaluationCriteria.class)
                     .getResultList();
-        }
+        });
     }
     /**
      * Méthode de recherche d'un critère d'évaluation en base de données par son nom.
@@ -100,11 +92,11 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
     public List<EvaluationCriteria> findByName(String name) {
         if (name == null || name.isEmpty()) return List.of();
 
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("EvaluationCriteria.findByName", EvaluationCriteria.class)
                     .setParameter("name", "%" + name + "%")
                     .getResultList();
-        }
+        });
     }
     /**
      * Méthode de recherche d'un critère d'évaluation en base de données par sa description.
@@ -114,10 +106,10 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
     public List<EvaluationCriteria> findByDescription(String description) {
         if (description == null || description.isEmpty()) return List.of();
 
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("EvaluationCriteria.findByDescription", EvaluationCriteria.class)
                     .setParameter("description", "%" + description + "%")
                     .getResultList();
-        }
+        });
     }
 }
@@ -1,22 +1,29 @@
 package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.CriteriaGradeAverage;
 import ch.hearc.ig.guideresto.business.Grade;
-import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.business.GradeAverage;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
 import jakarta.persistence.NoResultException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
 
 public class GradeMapper extends AbstractMapper<Grade> {
 
     public GradeMapper() {
+        super(Grade.class);
     }
 
     /**
@@ -40,15 +47,15 @@ public class GradeMapper extends AbstractMapper<Grade> {
     }
 
     /**
-     * Méthode de suppression en base de donnée
+     * Méthode de suppression en base de donnée. Les compteurs par critère (STATS_NOTES) ne sont pas
+     * décrémentés : relancer {@code EvaluationService.rebuildRatings()} après avoir supprimé des notes.
      * @param grade - l'objet Grade à supprimer
      * @return true si la suppression a réussi, false sinon
      */
-
     @Override
     public boolean delete(Grade grade, EntityManager em) {
         // Récupérer l'entité gérée par l'EM
-        RestaurantType managed = em.find(RestaurantType.class, grade.getId(), LockModeType.PESSIMISTIC_WRITE);
+        Grade managed = em.find(Grade.class, grade.getId());
         if (managed != null) {
             em.remove(managed);
         }
@@ -56,13 +63,13 @@ public class GradeMapper extends AbstractMapper<Grade> {
     }
 
     /**
-     * Méthode de suppression en base de donnée
+     * Méthode de suppression en base de donnée, sans mise à jour des compteurs par critère (voir {@link #delete})
      * @param id - identifiant de l'objet Grade à supprimer
      * @return true si la suppression a réussi, false sinon
      */
     @Override
     public boolean deleteById(Integer id, EntityManager em) {
-        Grade entity = em.find(Grade.class, id, LockModeType.PESSIMISTIC_WRITE);
+        Grade entity = em.find(Grade.class, id);
         if (entity != null) {
             em.remove(entity);
         }
@@ -75,7 +82,7 @@ public class GradeMapper extends AbstractMapper<Grade> {
      * @return la note trouvée, ou null s'il n'existe pas
      */
     public Grade findById(Integer id) {
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             try {
                 return em.createNamedQuery("Grade.findById", Grade.class)
                         .setParameter("id", id)
@@ -83,7 +90,7 @@ public class GradeMapper extends AbstractMapper<Grade> {
             } catch (NoResultException e) {
                 return null;
             }
-        }
+        });
     }
 
     /**
@@ -91,10 +98,22 @@ public class GradeMapper extends AbstractMapper<Grade> {
      * @return la liste des notes trouvées
      */
     public List<Grade> findAll() {
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("Grade.findAll", Grade.class)
                     .getResultList();
-        }
+        });
+    }
+
+    /**
+     * Méthode de parcours en flux de toutes les notes, en mémoire constante (exports, recalculs des moyennes).
+     * Le critère de chaque note est chargé avec elle ; le flux doit être fermé avant la fin de l'unité de travail.
+     * @param fetchSize - nombre de lignes lues par aller-retour avec la base
+     * @return le flux des notes, en lecture seule
+     */
+    @Override
+    public Stream<Grade> streamAll(int fetchSize) {
+        EntityManager em = getEntityManager();
+        return stream(em.createQuery("SELECT g FROM Grade g JOIN FETCH g.criteria", Grade.class), fetchSize, em);
     }
 
     /**
@@ -103,11 +122,11 @@ public class GradeMapper extends AbstractMapper<Grade> {
      * @return la liste des notes trouvées
      */
     public List<Grade> findByGrade(Integer gradeValue) {
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("Grade.findByGrade", Grade.class)
                     .setParameter("grade", gradeValue)
                     .getResultList();
-        }
+        });
     }
 
     /**
@@ -116,7 +135,7 @@ public class GradeMapper extends AbstractMapper<Grade> {
      * @return le Set des notes trouvées
      */
     public Set<Grade> findByEvaluation(CompleteEvaluation completeEvaluation) {
-        try (EntityManager em = getEntityManager()) {
+        return inReadScope(em -> {
             List<Grade> grades = em.createNamedQuery(
                             "Grade.findByEvaluation",
                             Grade.class
@@ -125,7 +144,67 @@ public class GradeMapper extends AbstractMapper<Grade> {
                     .getResultList();
 
             return new LinkedHashSet<>(grades);
-        }
+        });
+    }
+
+    /**
+     * Méthode de calcul en base de la note moyenne d'un restaurant, tous critères confondus
+     * @param restaurantId - identifiant du restaurant
+     * @return la moyenne du restaurant, avec un nombre de notes à zéro s'il n'a aucune note
+     */
+    public GradeAverage findAverage(Integer restaurantId) {
+        if (restaurantId == null) return null;
+        return findAverages(List.of(restaurantId)).getOrDefault(restaurantId, new GradeAverage(restaurantId, 0, 0));
     }
-}
 
+    /**
+     * Méthode de calcul en base de la note moyenne de plusieurs restaurants, tous critères confondus,
+     * par requêtes groupées de {@value #IN_LIST_LIMIT} restaurants au plus
+     * @param restaurantIds - identifiants des restaurants
+     * @return les moyennes par identifiant de restaurant ; les restaurants sans note sont absents
+     */
+    public Map<Integer, GradeAverage> findAverages(Collection<Integer> restaurantIds) {
+        if (restaurantIds == null || restaurantIds.isEmpty()) return Map.of();
+
+        return inReadScope(em -> {
+            Map<Integer, GradeAverage> averages = new HashMap<>();
+            for (List<Integer> chunk : chunks(restaurantIds, IN_LIST_LIMIT)) {
+                em.createNamedQuery("Grade.averageByRestaurants", GradeAverage.class)
+                        .setParameter("restaurantIds", chunk)
+                        .getResultList()
+                        .forEach(average -> averages.put(average.restaurantId(), average));
+            }
+            return averages;
+        });
+    }
+
+    /**
+     * Méthode de calcul en base de la note moyenne d'un restaurant pour chaque critère
+     * @param restaurantId - identifiant du restaurant
+     * @return les moyennes par critère, triées par critère
+     */
+    public List<CriteriaGradeAverage> findCriteriaAverages(Integer restaurantId) {
+        if (restaurantId == null) return List.of();
+        return findCriteriaAverages(List.of(restaurantId));
+    }
+
+    /**
+     * Méthode de calcul en base de la note moyenne de plusieurs restaurants pour chaque critère,
+     * par requêtes groupées de {@value #IN_LIST_LIMIT} restaurants au plus
+     * @param restaurantIds - identifiants des restaurants
+     * @return les moyennes par restaurant et par critère, triées par restaurant puis par critère dans chaque tranche
+     */
+    public List<CriteriaGradeAverage> findCriteriaAverages(Collection<Integer> restaurantIds) {
+        if (restaurantIds == null || restaurantIds.isEmpty()) return List.of();
+
+        return inReadScope(em -> {
+            List<CriteriaGradeAverage> averages = new ArrayList<>();
+            for (List<Integer> chunk : chunks(restaurantIds, IN_LIST_LIMIT)) {
+                averages.addAll(em.createNamedQuery("Grade.averageByRestaurantsAndCriteria", CriteriaGradeAverage.class)
+                        .setParameter("restaurantIds", chunk)
+                        .getResultList());
+            }
+            return averages;
+        });
+    }
+}
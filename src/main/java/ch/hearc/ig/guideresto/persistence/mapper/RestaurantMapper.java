@@ -3,21 +3,34 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 import ch.hearc.ig.guideresto.business.City;
 import ch.hearc.ig.guideresto.business.Localisation;
 import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantPlacement;
+import ch.hearc.ig.guideresto.business.RestaurantSummary;
 import ch.hearc.ig.guideresto.business.RestaurantType;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.FetchPlan;
+import ch.hearc.ig.guideresto.persistence.Page;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
+import jakarta.persistence.OptimisticLockException;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
 
 
 public class RestaurantMapper extends AbstractMapper<Restaurant> {
 
+    private static final String SUMMARY_SELECT =
+            "SELECT new ch.hearc.ig.guideresto.business.RestaurantSummary(r.id, r.name, r.address.street, c.zipCode, c.cityName) "
+                    + "FROM Restaurant r JOIN r.address.city c";
+    // ordre binaire des noms (sessions en NLS_SORT=BINARY), le même que celui de la comparaison au jeton
+    private static final Keyset<RestaurantSummary> BY_NAME =
+            new Keyset<>("r.name", "r.id", summary -> new Page.Key(summary.name(), summary.id()));
+
     public RestaurantMapper() {
+        super(Restaurant.class);
     }
 
     /**
@@ -38,7 +51,9 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
      */
     @Override
     public boolean update(Restaurant restaurant, EntityManager em) {
-        em.merge(restaurant);  // merge l'entité avec l'EM courant
+        Restaurant merged = em.merge(restaurant);  // échoue si la version lue n'est plus celle en base
+        em.flush();
+        restaurant.setVersion(merged.getVersion()); // l'appelant peut enchaîner une autre modification
         return true;
     }
     /**
@@ -63,55 +78,85 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
 
 
     /**
-     * Méthode de suppression en base de donnée
-     * @param restaurant - l'objet Restaurant à supprimer
+     * Méthode de suppression en base de donnée, avec ses évaluations et leurs notes
+     * @param restaurant - l'objet Restaurant à supprimer ; sa version, si elle est connue, doit être celle en base
      * @return true si la suppression a réussi, false sinon
+     * @see #deleteCascade(Integer, Integer, EntityManager)
      */
     @Override
     public boolean delete(Restaurant restaurant, EntityManager em) {
-        // Récupérer l'entité gérée par l'EM
-        Restaurant managed = em.find(Restaurant.class, restaurant.getId(), LockModeType.PESSIMISTIC_WRITE);
-        if (managed != null) {
-            em.remove(managed);
+        if (deleteCascade(restaurant.getId(), restaurant.getVersion(), em) == 0 && restaurant.getVersion() != null
+                && exists(restaurant.getId(), em)) {
+            throw new OptimisticLockException(restaurant); // modifié depuis que l'appelant l'a lu
         }
         return true;
     }
 
     /**
-     * Méthode de suppression d'un restaurant en base de donnée par identifiant
+     * Méthode de suppression d'un restaurant en base de donnée par identifiant, avec ses évaluations et leurs notes
      * @param id - identifiant du restaurant à supprimer
      * @return true si la suppression a réussi, false sinon
      */
     public boolean deleteById(Integer id, EntityManager em) {
-        Restaurant entity = em.find(Restaurant.class, id, LockModeType.PESSIMISTIC_WRITE);
-        if (entity != null) {
-            em.remove(entity);
-        }
+        deleteCascade(id, null, em);
         return true;
     }
 
     /**
-     * Méthode de recherche d'un restaurant en base de données par son identifiant.
+     * Supprime un restaurant et ses évaluations par DELETE JPQL, dans l'ordre des clés étrangères
+     * (notes, commentaires et likes, puis restaurant), sans charger aucune évaluation : le nombre d'ordres SQL
+     * ne dépend pas du nombre d'évaluations. Les compteurs du restaurant sont à supprimer avant, par leur mapper.
+     * Le contexte de persistance est vidé ensuite, les DELETE JPQL ne mettant pas à jour les entités déjà chargées.
+     * @param id - identifiant du restaurant
+     * @param version - version attendue du restaurant, ou null pour ne pas la contrôler
+     * @return le nombre de restaurants supprimés (0 s'il n'existe pas, ou plus dans cette version)
+     */
+    private int deleteCascade(Integer id, Integer version, EntityManager em) {
+        em.flush();
+        em.createNamedQuery("Grade.deleteByRestaurant").setParameter("restaurantId", id).executeUpdate();
+        em.createNamedQuery("CompleteEvaluation.deleteByRestaurant").setParameter("restaurantId", id).executeUpdate();
+        em.createNamedQuery("BasicEvaluation.deleteByRestaurant").setParameter("restaurantId", id).executeUpdate();
+        int deleted = version == null
+                ? em.createNamedQuery("Restaurant.deleteById").setParameter("id", id).executeUpdate()
+                : em.createNamedQuery("Restaurant.deleteByIdAndVersion").setParameter("id", id).setParameter("version", version).executeUpdate();
+        em.clear();
+        return deleted;
+    }
+
+    private boolean exists(Integer id, EntityManager em) {
+        return em.createQuery("SELECT COUNT(r) FROM Restaurant r WHERE r.id = :id", Long.class)
+                .setParameter("id", id)
+                .getSingleResult() > 0;
+    }
+
+    /**
+     * Méthode de recherche d'un restaurant en base de données par son identifiant, avec son type et sa ville.
      * @param id - identifiant du restaurant recherché
      * @return le restaurant trouvé, ou null s'il n'existe pas
      */
     @Override
     public Restaurant findById(Integer id) {
-        EntityManager em = getEntityManager();
-        return em.find(Restaurant.class, id, LockModeType.PESSIMISTIC_WRITE);
+        return findById(id, FetchPlan.SUMMARY);
     }
 
     /**
-     * Méthode de recherche de tous les restaurants en base de donnée
+     * Méthode de recherche de tous les restaurants en base de donnée, avec leur type et leur ville
      * @return la liste des restaurants trouvés
      */
     @Override
     public List<Restaurant> findAll() {
-        EntityManager em = getEntityManager();
-        return em.createQuery(
-                "SELECT r FROM Restaurant r",
-                Restaurant.class
-        ).getResultList();
+        return findAll(FetchPlan.SUMMARY);
+    }
+
+    /**
+     * Méthode de recherche de tous les restaurants en base de donnée
+     * @param plan - associations à charger avec les restaurants
+     * @return la liste des restaurants trouvés
+     */
+    public List<Restaurant> findAll(FetchPlan plan) {
+        return inReadScope(em -> withFetchPlan(
+                em.createQuery("SELECT r FROM Restaurant r", Restaurant.class), plan, em
+        ).getResultList());
     }
 
     /**
@@ -120,11 +165,19 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
      * @return la liste des restaurants trouvés
      */
     public List<Restaurant> findByName(String name) {
-        try (EntityManager em = getEntityManager()) {
-            return em.createNamedQuery("Restaurant.findByName", Restaurant.class)
-                    .setParameter("name", "%" + name + "%")
-                    .getResultList();
-        }
+        return findByName(name, FetchPlan.SUMMARY);
+    }
+
+    /**
+     * Méthode de recherche de restaurants en base de données par nom.
+     * @param name - nom du restaurant recherché
+     * @param plan - associations à charger avec les restaurants
+     * @return la liste des restaurants trouvés
+     */
+    public List<Restaurant> findByName(String name, FetchPlan plan) {
+        return inReadScope(em -> withFetchPlan(em.createNamedQuery("Restaurant.findByName", Restaurant.class), plan, em)
+                .setParameter("name", "%" + name + "%")
+                .getResultList());
     }
     /**
      * Méthode de recherche de restaurants en base de données par description.
@@ -132,10 +185,16 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
      * @return la liste des restaurants trouvés
      */
     public List<Restaurant> findByDescription(String description) {
-        EntityManager em = getEntityManager();
-        return em.createNamedQuery("Restaurant.findByDescription", Restaurant.class)
+        return findByDescription(description, FetchPlan.SUMMARY);
+    }
+
+    /**
+     * Méthode de recherche de restaurants en base de données par description, selon un plan de chargement.
+     */
+    public List<Restaurant> findByDescription(String description, FetchPlan plan) {
+        return inReadScope(em -> withFetchPlan(em.createNamedQuery("Restaurant.findByDescription", Restaurant.class), plan, em)
                 .setParameter("description", "%" + description + "%")
-                .getResultList();
+                .getResultList());
     }
     /**
      * Méthode de recherche de restaurants en base de données par site internet.
@@ -143,10 +202,16 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
      * @return la liste des restaurants trouvés
      */
     public List<Restaurant> findByWebsite(String website) {
-        EntityManager em = getEntityManager();
-        return em.createNamedQuery("Restaurant.findByWebsite", Restaurant.class)
+        return findByWebsite(website, FetchPlan.SUMMARY);
+    }
+
+    /**
+     * Méthode de recherche de restaurants en base de données par site internet, selon un plan de chargement.
+     */
+    public List<Restaurant> findByWebsite(String website, FetchPlan plan) {
+        return inReadScope(em -> withFetchPlan(em.createNamedQuery("Restaurant.findByWebsite", Restaurant.class), plan, em)
                 .setParameter("website", "%" + website + "%")
-                .getResultList();
+                .getResultList());
     }
     /**
      * Méthode de recherche de restaurants en base de données par rue.
@@ -154,44 +219,179 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
      * @return la liste des restaurants trouvés
      */
     public List<Restaurant> findByLocalisation(String street) {
-        EntityManager em = getEntityManager();
-        return em.createNamedQuery("Restaurant.findByLocalisation", Restaurant.class)
+        return findByLocalisation(street, FetchPlan.SUMMARY);
+    }
+
+    /**
+     * Méthode de recherche de restaurants en base de données par rue, selon un plan de chargement.
+     */
+    public List<Restaurant> findByLocalisation(String street, FetchPlan plan) {
+        return inReadScope(em -> withFetchPlan(em.createNamedQuery("Restaurant.findByLocalisation", Restaurant.class), plan, em)
                 .setParameter("street", "%" + street + "%")
-                .getResultList();
+                .getResultList());
     }
 
     /**
-     * Méthode de recherche de restaurants en base de données par ville.
-     * @param cityName - nom de la ville du restaurant recherché
+     * Méthode de recherche de restaurants en base de données par ville, sans tenir compte de la casse.
+     * @param cityName - début du nom de la ville du restaurant recherché
      * @return la liste des restaurants trouvés
      */
     public Set<Restaurant> findByCity(String cityName) {
-        EntityManager em = getEntityManager();
-        return new HashSet<>(
-                em.createNamedQuery(
-                        "Restaurant.findByCity",
-                        Restaurant.class
-                )
-                        .setParameter("cityName", cityName)
+        return findByCity(cityName, FetchPlan.SUMMARY);
+    }
+
+    /**
+     * Méthode de recherche de restaurants en base de données par ville, selon un plan de chargement.
+     */
+    public Set<Restaurant> findByCity(String cityName, FetchPlan plan) {
+        return inReadScope(em -> new HashSet<>(
+                withFetchPlan(em.createNamedQuery("Restaurant.findByCity", Restaurant.class), plan, em)
+                        .setParameter("cityName", cityName + "%")
                         .getResultList()
-        );
-        }
+        ));
+    }
 
     /**
-     * Méthode de recherche d'un restaurant en base de données par son type.
-     * @param label - type du restaurant recherché
+     * Méthode de recherche d'un restaurant en base de données par son type, sans tenir compte de la casse.
+     * @param label - début du libellé du type du restaurant recherché
      * @return la liste des restaurants trouvés
      */
     public Set<Restaurant> findByRestaurantType(String label) {
-        EntityManager em = getEntityManager();
-        return new HashSet<>(
-                em.createNamedQuery(
-                        "Restaurant.findByRestaurantType",
-                        Restaurant.class
-                )
-                        .setParameter("label", label)
+        return findByRestaurantType(label, FetchPlan.SUMMARY);
+    }
+
+    /**
+     * Méthode de recherche de restaurants en base de données par type, selon un plan de chargement.
+     */
+    public Set<Restaurant> findByRestaurantType(String label, FetchPlan plan) {
+        return inReadScope(em -> new HashSet<>(
+                withFetchPlan(em.createNamedQuery("Restaurant.findByRestaurantType", Restaurant.class), plan, em)
+                        .setParameter("label", label + "%")
                         .getResultList()
-        );
+        ));
+    }
+
+    /**
+     * Méthode de recherche de la vue résumée de tous les restaurants, triés par nom
+     * @return la liste des résumés de restaurants
+     */
+    public List<RestaurantSummary> findAllSummaries() {
+        return inReadScope(em -> em.createNamedQuery("Restaurant.summaries", RestaurantSummary.class)
+                .getResultList());
+    }
+
+    /**
+     * Méthode de recherche d'une page de la vue résumée des restaurants, triés par nom
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page de résumés de restaurants
+     */
+    public Page<RestaurantSummary> findSummaryPage(String cursor, int size) {
+        return inReadScope(em -> seek(em, RestaurantSummary.class, SUMMARY_SELECT, null, Map.of(), BY_NAME, cursor, size));
+    }
+
+    /**
+     * Méthode de recherche de la vue résumée des restaurants dont le nom contient une chaîne, sans tenir compte de la casse
+     * @param name - partie du nom recherché
+     * @return la liste des résumés de restaurants trouvés, triés par nom
+     */
+    public List<RestaurantSummary> findSummariesByName(String name) {
+        return inReadScope(em -> em.createNamedQuery("Restaurant.summariesByName", RestaurantSummary.class)
+                .setParameter("name", "%" + name + "%")
+                .getResultList());
+    }
+
+    /**
+     * Méthode de recherche d'une page de la vue résumée des restaurants dont le nom contient une chaîne, sans tenir compte de la casse
+     * @param name - partie du nom recherché
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page de résumés de restaurants trouvés, triés par nom
+     */
+    public Page<RestaurantSummary> findSummaryPageByName(String name, String cursor, int size) {
+        return inReadScope(em -> seek(em, RestaurantSummary.class, SUMMARY_SELECT, "LOWER(r.name) LIKE LOWER(:name)",
+                Map.of("name", "%" + name + "%"), BY_NAME, cursor, size));
+    }
+
+    /**
+     * Méthode de recherche de la vue résumée des restaurants dont la ville commence par une chaîne, sans tenir compte de la casse
+     * (recherche par préfixe, servie par l'index IX_VILL_NOM_LOWER)
+     * @param cityPart - début du nom de la ville
+     * @return la liste des résumés de restaurants trouvés, triés par nom
+     */
+    public List<RestaurantSummary> findSummariesByCity(String cityPart) {
+        return inReadScope(em -> em.createNamedQuery("Restaurant.summariesByCity", RestaurantSummary.class)
+                .setParameter("cityName", cityPart + "%")
+                .getResultList());
+    }
+
+    /**
+     * Méthode de recherche d'une page de la vue résumée des restaurants dont la ville commence par une chaîne, sans tenir compte de la casse
+     * (recherche par préfixe, servie par l'index IX_VILL_NOM_LOWER)
+     * @param cityPart - début du nom de la ville
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page de résumés de restaurants trouvés, triés par nom
+     */
+    public Page<RestaurantSummary> findSummaryPageByCity(String cityPart, String cursor, int size) {
+        return inReadScope(em -> seek(em, RestaurantSummary.class, SUMMARY_SELECT, "LOWER(c.cityName) LIKE LOWER(:cityName)",
+                Map.of("cityName", cityPart + "%"), BY_NAME, cursor, size));
+    }
+
+    /**
+     * Méthode de recherche de la vue résumée des restaurants dont le type commence par une chaîne, sans tenir compte de la casse
+     * (recherche par préfixe, servie par l'index IX_TYPE_LIBELLE_LOWER)
+     * @param label - début du libellé du type
+     * @return la liste des résumés de restaurants trouvés, triés par nom
+     */
+    public List<RestaurantSummary> findSummariesByType(String label) {
+        return inReadScope(em -> em.createNamedQuery("Restaurant.summariesByType", RestaurantSummary.class)
+                .setParameter("label", label + "%")
+                .getResultList());
+    }
+
+    /**
+     * Méthode de recherche d'une page de la vue résumée des restaurants dont le type commence par une chaîne, sans tenir compte de la casse
+     * (recherche par préfixe, servie par l'index IX_TYPE_LIBELLE_LOWER)
+     * @param label - début du libellé du type
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page de résumés de restaurants trouvés, triés par nom
+     */
+    public Page<RestaurantSummary> findSummaryPageByType(String label, String cursor, int size) {
+        return inReadScope(em -> seek(em, RestaurantSummary.class, SUMMARY_SELECT, "LOWER(r.type.label) LIKE LOWER(:label)",
+                Map.of("label", label + "%"), BY_NAME, cursor, size));
     }
-  }
 
+    /**
+     * Méthode de recherche de la vue résumée des restaurants d'un type donné (par clé étrangère, sans comparaison de libellé)
+     * @param type - type des restaurants
+     * @return la liste des résumés de restaurants trouvés, triés par nom
+     */
+    public List<RestaurantSummary> findSummariesOfType(RestaurantType type) {
+        return inReadScope(em -> em.createNamedQuery("Restaurant.summariesOfType", RestaurantSummary.class)
+                .setParameter("type", type)
+                .getResultList());
+    }
+
+    /**
+     * Méthode de recherche d'une page de la vue résumée des restaurants d'un type donné
+     * @param type - type des restaurants
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, 0 pour la taille maximale
+     * @return la page de résumés de restaurants trouvés, triés par nom
+     */
+    public Page<RestaurantSummary> findSummaryPageOfType(RestaurantType type, String cursor, int size) {
+        return inReadScope(em -> seek(em, RestaurantSummary.class, SUMMARY_SELECT, "r.type = :type",
+                Map.of("type", type), BY_NAME, cursor, size));
+    }
+
+    /**
+     * Méthode de recherche du nom, de la ville et du type de tous les restaurants, par projection
+     * @return la position de chaque restaurant
+     */
+    public List<RestaurantPlacement> findPlacements() {
+        return inReadScope(em -> em.createNamedQuery("Restaurant.placements", RestaurantPlacement.class)
+                .getResultList());
+    }
+}
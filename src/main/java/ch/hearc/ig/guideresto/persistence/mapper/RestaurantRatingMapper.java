@@ -0,0 +1,215 @@
+package ch.hearc.ig.guideresto.persistence.mapper;
+
+import ch.hearc.ig.guideresto.business.CriteriaRating;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.RestaurantRating;
+import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
+
+/**
+ * Mapper des compteurs d'évaluations par restaurant ({@link RestaurantRating}) et par critère ({@link CriteriaRating}).
+ * Les compteurs du restaurant sont incrémentés par un MERGE, dans la transaction de l'évaluation : deux ajouts
+ * simultanés ne peuvent pas perdre d'incrément, et la ligne est créée si elle manque. La ligne du restaurant est
+ * toujours écrite en premier, ce qui sérialise les évaluations simultanées d'un même restaurant sur son verrou de
+ * ligne : les compteurs par critère peuvent ensuite être lus, créés, modifiés et réécrits sans risque de perdre une note.
+ */
+public class RestaurantRatingMapper extends AbstractMapper<RestaurantRating> {
+
+    private static final String INCREMENT =
+            "MERGE INTO STATS_RESTAURANTS s USING (SELECT CAST(? AS NUMBER(10)) AS FK_REST FROM DUAL) v ON (s.FK_REST = v.FK_REST) " +
+            "WHEN MATCHED THEN UPDATE SET s.NB_LIKES = s.NB_LIKES + ?, s.NB_DISLIKES = s.NB_DISLIKES + ?, " +
+            "s.NB_EVALUATIONS = s.NB_EVALUATIONS + ? " +
+            "WHEN NOT MATCHED THEN INSERT (FK_REST, NB_LIKES, NB_DISLIKES, NB_EVALUATIONS) VALUES (v.FK_REST, ?, ?, ?)";
+
+    public RestaurantRatingMapper() {
+        super(RestaurantRating.class);
+    }
+
+    /**
+     * Méthode de persistence en base de donnée
+     * @param rating - compteurs à ajouter en base, en général à zéro pour un nouveau restaurant
+     * @return les compteurs persistés
+     */
+    @Override
+    public RestaurantRating create(RestaurantRating rating, EntityManager em) {
+        em.persist(rating);
+        return rating;
+    }
+
+    /**
+     * Sans effet : les compteurs ne se modifient que par incréments ({@link #addVote}, {@link #addReview})
+     * ou par {@link #rebuild}. Réécrire des valeurs lues plus tôt écraserait les incréments faits entre-temps
+     * par d'autres transactions ; les appels génériques ({@link #updateAll}) ne modifient donc rien.
+     * @param rating - compteurs ignorés
+     * @return false, aucune ligne n'est mise à jour
+     */
+    @Override
+    public boolean update(RestaurantRating rating, EntityManager em) {
+        return false;
+    }
+
+    /**
+     * Méthode de suppression en base de donnée
+     * @param rating - compteurs à supprimer, avec ceux de chaque critère du restaurant
+     * @return true si la suppression a réussi, false sinon
+     */
+    @Override
+    public boolean delete(RestaurantRating rating, EntityManager em) {
+        return deleteById(rating.getRestaurantId(), em);
+    }
+
+    /**
+     * Méthode de suppression des compteurs d'un restaurant et de ses critères, à appeler avant de supprimer le restaurant
+     * @param restaurantId - identifiant du restaurant
+     * @return true si la suppression a réussi, false sinon
+     */
+    @Override
+    public boolean deleteById(Integer restaurantId, EntityManager em) {
+        em.createNamedQuery("CriteriaRating.deleteByRestaurant")
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+        em.createNamedQuery("RestaurantRating.deleteByRestaurant")
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+        return true;
+    }
+
+    /**
+     * Méthode de recherche des compteurs d'un restaurant
+     * @param restaurantId - identifiant du restaurant
+     * @return les compteurs du restaurant, ou null s'ils n'existent pas encore
+     */
+    @Override
+    public RestaurantRating findById(Integer restaurantId) {
+        if (restaurantId == null) return null;
+
+        return inReadScope(em -> {
+            return em.find(RestaurantRating.class, restaurantId);
+        });
+    }
+
+    /**
+     * Méthode de recherche des compteurs de tous les restaurants
+     * @return la liste des compteurs
+     */
+    @Override
+    public List<RestaurantRating> findAll() {
+        return inReadScope(em -> {
+            return em.createQuery("SELECT rr FROM RestaurantRating rr", RestaurantRating.class)
+                    .getResultList();
+        });
+    }
+
+    /**
+     * Méthode de recherche des moyennes par critère d'un restaurant, avec leur critère
+     * @param restaurantId - identifiant du restaurant
+     * @return les compteurs par critère, triés par critère
+     */
+    public List<CriteriaRating> findCriteriaRatings(Integer restaurantId) {
+        if (restaurantId == null) return List.of();
+
+        return inReadScope(em -> {
+            return em.createNamedQuery("CriteriaRating.findByRestaurant", CriteriaRating.class)
+                    .setParameter("restaurantId", restaurantId)
+                    .getResultList();
+        });
+    }
+
+    /**
+     * Méthode d'ajout d'un like ou d'un dislike aux compteurs d'un restaurant
+     * @param restaurantId - identifiant du restaurant
+     * @param like - true pour un like, false pour un dislike
+     */
+    public void addVote(Integer restaurantId, boolean like, EntityManager em) {
+        addVotes(restaurantId, like ? 1 : 0, like ? 0 : 1, em);
+    }
+
+    /**
+     * Méthode d'ajout de plusieurs likes et dislikes aux compteurs d'un restaurant, en un seul UPDATE
+     * (écriture par lots des likes)
+     * @param restaurantId - identifiant du restaurant
+     * @param likes - nombre de likes à ajouter
+     * @param dislikes - nombre de dislikes à ajouter
+     */
+    public void addVotes(Integer restaurantId, long likes, long dislikes, EntityManager em) {
+        increment(restaurantId, likes, dislikes, 0, em);
+    }
+
+    /**
+     * Méthode d'ajout d'une évaluation complète et de ses notes aux compteurs d'un restaurant. Les compteurs
+     * par critère sont lus en une requête puis modifiés en mémoire : leurs UPDATE partent en un batch JDBC au flush.
+     * @param restaurantId - identifiant du restaurant
+     * @param grades - notes de l'évaluation
+     */
+    public void addReview(Integer restaurantId, Collection<Grade> grades, EntityManager em) {
+        increment(restaurantId, 0, 0, 1, em);
+
+        // lus après le verrouillage de la ligne du restaurant : aucune autre évaluation ne peut les modifier entre-temps
+        Map<Integer, CriteriaRating> counters = new HashMap<>();
+        for (CriteriaRating counter : em.createNamedQuery("CriteriaRating.countersByRestaurant", CriteriaRating.class)
+                .setParameter("restaurantId", restaurantId)
+                .getResultList()) {
+            counters.put(counter.getCriteriaId(), counter);
+        }
+        for (Grade grade : grades) {
+            Integer criteriaId = grade.getCriteria().getId();
+            CriteriaRating counter = counters.get(criteriaId);
+            if (counter == null) {
+                counter = new CriteriaRating(restaurantId, criteriaId, 0, 0);
+                em.persist(counter);
+                counters.put(criteriaId, counter);
+            }
+            counter.addGrade(grade.getGrade());
+        }
+    }
+
+    /**
+     * Incrémente les compteurs d'un restaurant, en créant leur ligne si elle manque, et verrouille cette ligne
+     * jusqu'à la fin de la transaction. Deux MERGE simultanés sur une ligne absente peuvent tous deux tenter
+     * l'insertion : le second échoue sur la clé primaire une fois le premier validé, puis est rejoué et met à jour
+     * la ligne. Le MERGE passe directement par JDBC : Oracle n'annule que l'ordre en échec, alors qu'une erreur
+     * remontée par une requête JPA marquerait toute la transaction pour annulation.
+     */
+    private void increment(Integer restaurantId, long likes, long dislikes, long reviews, EntityManager em) {
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement merge = connection.prepareStatement(INCREMENT)) {
+                merge.setInt(1, restaurantId);
+                merge.setLong(2, likes);
+                merge.setLong(3, dislikes);
+                merge.setLong(4, reviews);
+                merge.setLong(5, likes);
+                merge.setLong(6, dislikes);
+                merge.setLong(7, reviews);
+                try {
+                    merge.executeUpdate();
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    merge.executeUpdate(); // ligne créée entre-temps par une autre transaction
+                }
+            }
+        });
+    }
+
+    /**
+     * Méthode de reconstruction de tous les compteurs à partir des évaluations (après un import SQL,
+     * ou pour corriger une dérive). Les compteurs sont recalculés par INSERT ... SELECT groupés, en base.
+     * @return le nombre de restaurants dont les compteurs ont été reconstruits
+     */
+    public int rebuild(EntityManager em) {
+        em.createQuery("DELETE FROM CriteriaRating").executeUpdate();
+        em.createQuery("DELETE FROM RestaurantRating").executeUpdate();
+        int restaurants = em.createNamedQuery("RestaurantRating.rebuild").executeUpdate();
+        em.createNamedQuery("CriteriaRating.rebuild").executeUpdate();
+        em.clear(); // les ordres en masse ne mettent pas à jour les compteurs déjà chargés
+        return restaurants;
+    }
+}
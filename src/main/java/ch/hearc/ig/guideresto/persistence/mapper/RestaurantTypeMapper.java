@@ -2,16 +2,25 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.RestaurantType;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
-import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.LockModeType;
-import jakarta.persistence.NoResultException;
+import org.hibernate.Session;
 
 import java.util.List;
 
+import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.inReadScope;
+
 public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
 
     public RestaurantTypeMapper() {
+        super(RestaurantType.class);
+    }
+
+    /**
+     * Pas de cascade depuis le type vers ses restaurants : DELETE JPQL direct.
+     */
+    @Override
+    protected boolean supportsBulkDelete() {
+        return true;
     }
 
     /**
@@ -43,7 +52,7 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     @Override
     public boolean delete(RestaurantType type, EntityManager em) {
         // Récupérer l'entité gérée par l'EM
-        RestaurantType managed = em.find(RestaurantType.class, type.getId(), LockModeType.PESSIMISTIC_WRITE);
+        RestaurantType managed = em.find(RestaurantType.class, type.getId());
         if (managed != null) {
             em.remove(managed);
         }
@@ -56,7 +65,7 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
      */
     @Override
     public boolean deleteById(Integer id, EntityManager em) {
-        RestaurantType entity = em.find(RestaurantType.class, id, LockModeType.PESSIMISTIC_WRITE);
+        RestaurantType entity = em.find(RestaurantType.class, id);
         if (entity != null) {
             em.remove(entity);
         }
@@ -72,15 +81,9 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     public RestaurantType findById(Integer id) {
         if (id == null) return null;
 
-        try (EntityManager em = JpaUtils.getEntityManager()) {
-            try {
-                return em.createNamedQuery("RestaurantType.findById", RestaurantType.class)
-                        .setParameter("id", id)
-                        .getSingleResult();
-            } catch (NoResultException e) {
-                return null;
-            }
-        }
+        return inReadScope(em -> {
+            return em.find(RestaurantType.class, id); // servi par le cache de second niveau
+        });
     }
 
     /**
@@ -89,10 +92,26 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
      */
     @Override
     public List<RestaurantType> findAll() {
-        try (EntityManager em = JpaUtils.getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("RestaurantType.findAll", RestaurantType.class)
                     .getResultList();
-        }
+        });
+    }
+
+    /**
+     * Méthode de recherche d'un type de restaurant par son libellé exact.
+     * Passe par l'identifiant naturel : servi par le cache de second niveau une fois le type connu.
+     * @param label - libellé du type
+     * @return le type trouvé, ou null s'il n'existe pas
+     */
+    public RestaurantType findByLabel(String label) {
+        if (label == null || label.isEmpty()) return null;
+
+        return inReadScope(em -> {
+            return em.unwrap(Session.class)
+                    .bySimpleNaturalId(RestaurantType.class)
+                    .load(label);
+        });
     }
 
     /**
@@ -101,16 +120,8 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
      * @return la liste des types de restaurant trouvée
      */
     public List<RestaurantType> findByName(String name) {
-        if (name == null || name.isEmpty()) return List.of();
-
-        try (EntityManager em = JpaUtils.getEntityManager()) {
-            return em.createQuery(
-                            "SELECT rt FROM RestaurantType rt WHERE rt.label = :name",
-                            RestaurantType.class
-                    )
-                    .setParameter("name", name)
-                    .getResultList();
-        }
+        RestaurantType type = findByLabel(name);
+        return type == null ? List.of() : List.of(type);
     }
 
     /**
@@ -119,10 +130,10 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
      * @return la liste des types de restaurant trouvés
      */
     public List<RestaurantType> findByDescription(String description) {
-        try (EntityManager em = JpaUtils.getEntityManager()) {
+        return inReadScope(em -> {
             return em.createNamedQuery("RestaurantType.findByDescription", RestaurantType.class)
                     .setParameter("description", "%" + description + "%")
                     .getResultList();
-        }
+        });
     }
 }
@@ -1,24 +1,45 @@
 package ch.hearc.ig.guideresto.presentation;
 
 import ch.hearc.ig.guideresto.business.*;
+import ch.hearc.ig.guideresto.persistence.ConcurrentUpdateException;
+import ch.hearc.ig.guideresto.persistence.Page;
 import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
 import ch.hearc.ig.guideresto.services.CityService;
+import ch.hearc.ig.guideresto.services.DuplicateLikeService;
 import ch.hearc.ig.guideresto.services.EvaluationService;
+import ch.hearc.ig.guideresto.services.LeaderboardService;
+import ch.hearc.ig.guideresto.services.RateLimitExceededException;
 import ch.hearc.ig.guideresto.services.RestaurantService;
 import ch.hearc.ig.guideresto.services.RestaurantTypeService;
 
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 /**
  * @author cedric.baudet
  * @author alain.matile
  */
 public class Application {
 
+    /** Nombre de restaurants affichés par page dans les listes. */
+    private static final int PAGE_SIZE = 20;
+    /** Nombre de restaurants affichés dans les classements. */
+    private static final int LEADERBOARD_SIZE = 10;
+    /** Propriété système activant l'écriture différée des likes (-Dguideresto.likes.writeBehind=true). */
+    private static final String LIKES_WRITE_BEHIND = "guideresto.likes.writeBehind";
+
     private static Scanner scanner;
     public static void main(String[] args) {
         JpaUtils.init();//Charge Hibernate et la connexion à la BDD dès le début de l'application
         Runtime.getRuntime().addShutdownHook(new Thread(JpaUtils::close)); // sert à fermer la connexion JPA à la fermeture de l'application, dans toute les situations
+        LeaderboardService.getInstance().rebuild(); // classements des meilleurs restaurants, tenus à jour ensuite à chaque évaluation
+        DuplicateLikeService.getInstance().rebuild(); // likes du jour, pour refuser sans requête un second like de la même adresse
+        if (Boolean.getBoolean(LIKES_WRITE_BEHIND)) {
+            // likes écrits par lots de 100 au plus, au plus tard 200 ms après leur soumission
+            EvaluationService.getInstance().enableWriteBehind(10_000, 100, Duration.ofMillis(200));
+        }
 
         scanner = new Scanner(System.in);
 
@@ -46,13 +67,15 @@ public class Application {
         System.out.println("3. Rechercher un restaurant par ville");
         System.out.println("4. Rechercher un restaurant par son type de cuisine");
         System.out.println("5. Saisir un nouveau restaurant");
+        System.out.println("6. Recalculer les statistiques d'évaluation des restaurants");
+        System.out.println("7. Afficher les meilleurs restaurants");
         System.out.println("0. Quitter l'application");
     }
 
     /**
      * On gère le choix saisi par l'utilisateur
      *
-     * @param choice Un nombre entre 0 et 5.
+     * @param choice Un nombre entre 0 et 7.
      */
     private static void proceedMainMenu(int choice) throws  SQLException {
         switch (choice) {
@@ -71,6 +94,12 @@ public class Application {
             case 5:
                 addNewRestaurant();
                 break;
+            case 6:
+                rebuildRatings();
+                break;
+            case 7:
+                showLeaderboard();
+                break;
             case 0:
                 System.out.println("Au revoir !");
                 JpaUtils.close();
@@ -83,45 +112,58 @@ public class Application {
     }
 
     /**
-     * On affiche à l'utilisateur une liste de restaurants numérotés, et il doit en sélectionner un !
+     * On affiche à l'utilisateur une liste de restaurants numérotés, page par page, et il doit en sélectionner un !
      *
-     * @param restaurants Liste à afficher
-     * @return L'instance du restaurant choisi par l'utilisateur
+     * @param page     Première page à afficher
+     * @param nextPage Chargement de la page suivante à partir de son jeton
+     * @return Le résumé du restaurant choisi par l'utilisateur
      */
-    private static Restaurant pickRestaurant(List<Restaurant> restaurants) {
+    private static RestaurantSummary pickRestaurant(Page<RestaurantSummary> page,
+                                                    Function<String, Page<RestaurantSummary>> nextPage) {
 
         System.out.println("Plusieurs restaurants trouvés :");
 
-        for (int i = 0; i < restaurants.size(); i++) {
-            Restaurant r = restaurants.get(i);
-            System.out.println(
-                    (i + 1) + ") \"" + r.getName() + "\" - " +
-                            r.getAddress().getStreet() + " - " +
-                            r.getAddress().getCity().getZipCode() + " " +
-                            r.getAddress().getCity().getCityName()
-            );
-        }
-
-        System.out.println("Entrez le numéro du restaurant (ou Enter pour annuler) :");
-        String input = readString();
-
-        if (input.isBlank()) {
-            return null;
-        }
+        while (true) {
+            List<RestaurantSummary> restaurants = page.items();
+            for (int i = 0; i < restaurants.size(); i++) {
+                RestaurantSummary r = restaurants.get(i);
+                System.out.println(
+                        (i + 1) + ") \"" + r.name() + "\" - " +
+                                r.street() + " - " +
+                                r.zipCode() + " " +
+                                r.cityName()
+                );
+            }
 
-        try {
-            int index = Integer.parseInt(input);
+            if (page.hasNext()) {
+                System.out.println("Entrez le numéro du restaurant, + pour la page suivante (ou Enter pour annuler) :");
+            } else {
+                System.out.println("Entrez le numéro du restaurant (ou Enter pour annuler) :");
+            }
+            String input = readString().trim();
 
-            if (index < 1 || index > restaurants.size()) {
-                System.out.println("Numéro invalide.");
+            if (input.isBlank()) {
                 return null;
             }
+            if (input.equals("+") && page.hasNext()) {
+                page = nextPage.apply(page.nextCursor());
+                continue;
+            }
 
-            return restaurants.get(index - 1);
+            try {
+                int index = Integer.parseInt(input);
 
-        } catch (NumberFormatException e) {
-            System.out.println("Veuillez entrer un numéro valide.");
-            return null;
+                if (index < 1 || index > restaurants.size()) {
+                    System.out.println("Numéro invalide.");
+                    return null;
+                }
+
+                return restaurants.get(index - 1);
+
+            } catch (NumberFormatException e) {
+                System.out.println("Veuillez entrer un numéro valide.");
+                return null;
+            }
         }
     }
 
@@ -130,18 +172,19 @@ public class Application {
      */
     private static void showRestaurantsList() {
 
-        List<Restaurant> restaurants = RestaurantService.getInstance().getAllRestaurants();
+        Page<RestaurantSummary> restaurants = RestaurantService.getInstance().getAllRestaurants(null, PAGE_SIZE);
         if (restaurants.isEmpty()){
             System.out.println("Aucun restaurant n'est enregistré dans le système.");
             return;
-        } else if (restaurants.size() ==1 ) {
+        } else if (restaurants.items().size() ==1 && !restaurants.hasNext()) {
             System.out.println("Un seul restaurant trouvé :");
         } else {
             System.out.println("Liste des restaurants : ");
         }
-        Restaurant restaurant = pickRestaurant(restaurants);
+        RestaurantSummary restaurant = pickRestaurant(restaurants,
+                cursor -> RestaurantService.getInstance().getAllRestaurants(cursor, PAGE_SIZE));
         if (restaurant != null) {
-            showRestaurant(restaurant);
+            showRestaurant(restaurant.id());
         }
     }
     /**
@@ -150,20 +193,21 @@ public class Application {
     private static void searchRestaurantByName() {
         System.out.println("Veuillez entrer une partie du nom recherché : ");
         String research = readString();
-        List<Restaurant> restaurants ;
+        Page<RestaurantSummary> restaurants ;
 
         try {
-            restaurants = RestaurantService.getInstance().findRestaurantsByName(research);
+            restaurants = RestaurantService.getInstance().findRestaurantsByName(research, null, PAGE_SIZE);
             if (restaurants.isEmpty()) {
                 System.out.println("Aucun restaurant trouvé pour : " + research);
             }
-            else if (restaurants.size() == 1) {
-                showRestaurant(restaurants.getFirst());
+            else if (restaurants.items().size() == 1 && !restaurants.hasNext()) {
+                showRestaurant(restaurants.items().getFirst().id());
             }
             else{// L'utilisateur choisit un restaurant parmi les résultats.
-            Restaurant restaurant = pickRestaurant(restaurants);
+            RestaurantSummary restaurant = pickRestaurant(restaurants,
+                    cursor -> RestaurantService.getInstance().findRestaurantsByName(research, cursor, PAGE_SIZE));
             if (restaurant != null) {
-                showRestaurant(restaurant);
+                showRestaurant(restaurant.id());
                 }
             }
         } catch (Exception e) {
@@ -173,23 +217,24 @@ public class Application {
     }
 
     /**
-     * Affiche une liste de restaurants dont le nom de la ville contient une chaîne de caractères saisie par l'utilisateur
+     * Affiche une liste de restaurants dont le nom de la ville commence par une chaîne de caractères saisie par l'utilisateur
      */
     private static void searchRestaurantByCity() {
-        System.out.print("Entrez une partie du nom de la ville : ");
+        System.out.print("Entrez le début du nom de la ville : ");
         String research = readString();
         try {
             // ⚡ On passe par le service au lieu du mapper
-            List<Restaurant> filtered = RestaurantService.getInstance().findRestaurantsByCity(research);
+            Page<RestaurantSummary> filtered = RestaurantService.getInstance().findRestaurantsByCity(research, null, PAGE_SIZE);
 
             if (filtered.isEmpty()) {
-                System.out.println("Aucun restaurant trouvé dans une ville contenant : " + research);
+                System.out.println("Aucun restaurant trouvé dans une ville commençant par : " + research);
                 return;
             }
 
-            Restaurant chosen = pickRestaurant(filtered);
+            RestaurantSummary chosen = pickRestaurant(filtered,
+                    cursor -> RestaurantService.getInstance().findRestaurantsByCity(research, cursor, PAGE_SIZE));
             if (chosen != null) {
-                showRestaurant(chosen);
+                showRestaurant(chosen.id());
             }
         } catch (Exception e) {
             System.err.println("Erreur lors de la recherche par ville : " + e.getMessage());
@@ -296,15 +341,16 @@ public class Application {
             if (chosenType == null) return;
 
             // ⚡ Utilisation du service pour filtrer par type
-            List<Restaurant> filtered = RestaurantService.getInstance().findRestaurantsByType(chosenType.getLabel());
+            Page<RestaurantSummary> filtered = RestaurantService.getInstance().findRestaurantsByType(chosenType.getLabel(), null, PAGE_SIZE);
 
             if (filtered.isEmpty()) {
                 System.out.println("Aucun restaurant trouvé pour le type : " + chosenType.getLabel());
                 return;
             }
 
-            Restaurant chosen = pickRestaurant(filtered);
-            if (chosen != null) showRestaurant(chosen);
+            RestaurantSummary chosen = pickRestaurant(filtered,
+                    cursor -> RestaurantService.getInstance().findRestaurantsByType(chosenType.getLabel(), cursor, PAGE_SIZE));
+            if (chosen != null) showRestaurant(chosen.id());
 
         } catch (Exception e) {
             System.err.println("Erreur lors de la recherche par type : " + e.getMessage());
@@ -382,16 +428,69 @@ public class Application {
 
 
     /**
-     * Affiche toutes les informations du restaurant passé en paramètre, puis affiche le menu des actions disponibles sur ledit restaurant
+     * Recalcule les compteurs d'évaluations (likes, dislikes, moyennes par critère) de tous les restaurants.
+     */
+    private static void rebuildRatings() {
+        int restaurants = EvaluationService.getInstance().rebuildRatings();
+        LeaderboardService.getInstance().rebuild();
+        System.out.println("✅ Statistiques recalculées pour " + restaurants + " restaurant(s).");
+    }
+
+    /**
+     * Affiche les meilleurs restaurants, au choix de l'utilisateur tous confondus, d'une ville ou d'un type.
+     */
+    private static void showLeaderboard() {
+        System.out.println("1. Tous les restaurants");
+        System.out.println("2. Par ville");
+        System.out.println("3. Par type de cuisine");
+        List<LeaderboardService.Standing> top;
+        switch (readInt()) {
+            case 1:
+                top = LeaderboardService.getInstance().top(LEADERBOARD_SIZE);
+                break;
+            case 2:
+                City city = pickCity(CityService.getInstance().getAllCities());
+                if (city == null) return;
+                top = LeaderboardService.getInstance().topInCity(city.getId(), LEADERBOARD_SIZE);
+                break;
+            case 3:
+                RestaurantType type = pickRestaurantType(RestaurantTypeService.getInstance().getAllTypes());
+                if (type == null) return;
+                top = LeaderboardService.getInstance().topOfType(type.getId(), LEADERBOARD_SIZE);
+                break;
+            default:
+                System.out.println("Erreur : saisie incorrecte.");
+                return;
+        }
+
+        if (top.isEmpty()) {
+            System.out.println("Aucun restaurant classé.");
+            return;
+        }
+        for (int i = 0; i < top.size(); i++) {
+            LeaderboardService.Standing s = top.get(i);
+            System.out.println((i + 1) + ") \"" + s.name() + "\" - score " + String.format("%.0f", s.score() * 100)
+                    + "/100 - moyenne " + String.format("%.1f", s.averageGrade()) + "/5 (" + s.gradeCount() + " notes), "
+                    + s.likes() + " likes / " + s.dislikes() + " dislikes");
+        }
+    }
+
+    /**
+     * Charge et affiche toutes les informations du restaurant dont l'identifiant est passé en paramètre, puis affiche le menu des actions disponibles sur ledit restaurant
      *
-     * @param restaurant Le restaurant à afficher
+     * @param restaurantId L'identifiant du restaurant à afficher
      */
 
-    private static void showRestaurant(Restaurant restaurant) {
-        if (restaurant == null) {
+    private static void showRestaurant(Integer restaurantId) {
+        if (restaurantId == null) {
             System.out.println("Restaurant invalide !");
             return;
         }
+        Restaurant restaurant = RestaurantService.getInstance().getRestaurant(restaurantId);
+        if (restaurant == null) {
+            System.out.println("Ce restaurant n'existe plus !");
+            return;
+        }
 
         try {
             // 🔹 Infos générales
@@ -404,33 +503,18 @@ public class Application {
                     restaurant.getAddress().getCity().getZipCode() + " " + restaurant.getAddress().getCity().getCityName());
             System.out.println();
 
-            //LIKE et DISLIKE
-
-            System.out.println("Chargement des likes - test");
-
-            List<BasicEvaluation> basicEvals = EvaluationService.getInstance().getBasicEvaluations(restaurant);
-            System.out.println("Likes : " + EvaluationService.getInstance().countLikes(basicEvals, true));
-            System.out.println("Dislikes : " + EvaluationService.getInstance().countLikes(basicEvals, false));
-            System.out.println();
-            // Evaluation complete
-            List<CompleteEvaluation> completeEvals = EvaluationService.getInstance().getCompleteEvaluations(restaurant);
-            System.out.println("Évaluations complètes :");
-            if (completeEvals.isEmpty()) {
-                System.out.println("Aucune évaluation complète pour ce restaurant.");
-            } else {
-                for (CompleteEvaluation ce : completeEvals) {
-                    System.out.println("Utilisateur : " + ce.getUsername());
-                    System.out.println("Commentaire : " + ce.getComment());
-                    if (ce.getGrades().isEmpty()) {
-                        System.out.println("Aucune note disponible");
-                    } else {
-                        for (Grade g : ce.getGrades()) {
-                            System.out.println(g.getCriteria().getName() + " : " + g.getGrade() + "/5");
-                        }
-                    }
-                    System.out.println("--------------------------");
-                }
+            // Compteurs tenus à jour à chaque évaluation : pas de relecture des likes ni des notes
+            RestaurantRating rating = EvaluationService.getInstance().getRating(restaurant);
+            System.out.println("Likes : " + rating.getLikeCount());
+            System.out.println("Dislikes : " + rating.getDislikeCount());
+            System.out.println("Évaluations complètes : " + rating.getReviewCount());
+            for (CriteriaRating criteriaRating : EvaluationService.getInstance().getCriteriaRatings(restaurant)) {
+                System.out.println(criteriaRating.getCriteria().getName() + " : "
+                        + String.format("%.1f", criteriaRating.getAverage()) + "/5 (" + criteriaRating.getGradeCount() + " notes)");
             }
+            System.out.println();
+            // Evaluation complete, page par page
+            showCompleteEvaluations(restaurant);
 
             // 🔹 Menu actions pour ce restaurant
             int choice;
@@ -446,6 +530,29 @@ public class Application {
         }
     }
 
+    /**
+     * Affiche les évaluations complètes du restaurant page par page, l'utilisateur choisissant d'afficher la suivante.
+     *
+     * @param restaurant Le restaurant dont les évaluations sont affichées
+     */
+    private static void showCompleteEvaluations(Restaurant restaurant) {
+        Page<CompleteEvaluation> page = EvaluationService.getInstance().getCompleteEvaluations(restaurant, null, PAGE_SIZE);
+        if (page.isEmpty()) {
+            System.out.println("Aucune évaluation complète pour ce restaurant.");
+            return;
+        }
+        while (true) {
+            for (CompleteEvaluation ce : page.items()) {
+                System.out.print(getCompleteEvaluationDescription(ce));
+                System.out.println("--------------------------");
+            }
+            if (!page.hasNext()) return;
+            System.out.println("+ pour afficher les évaluations suivantes (ou Enter pour continuer) :");
+            if (!readString().trim().equals("+")) return;
+            page = EvaluationService.getInstance().getCompleteEvaluations(restaurant, page.nextCursor(), PAGE_SIZE);
+        }
+    }
+
     /**
      * Retourne un String qui contient le détail complet d'une évaluation si elle est de type "CompleteEvaluation". Retourne un String vide s'il s'agit d'une BasicEvaluation
      *
@@ -525,8 +632,19 @@ public class Application {
      * @param like       Est-ce un like ou un dislike ?
      */
     private static void addBasicEvaluation(Restaurant restaurant, Boolean like)  {
-        EvaluationService.getInstance().addBasicEvaluation(restaurant, like);
-        System.out.println("Votre vote a été pris en compte !");
+        CompletableFuture<BasicEvaluation> ack = EvaluationService.getInstance().submitBasicEvaluation(restaurant, like);
+        if (ack.isDone() && !ack.isCompletedExceptionally() && ack.join() == null) {
+            System.out.println("Vous avez déjà évalué ce restaurant aujourd'hui.");
+            return;
+        }
+        if (!ack.isCompletedExceptionally()) {
+            System.out.println("Votre vote a été pris en compte !");
+        }
+        // écriture différée : l'échec éventuel n'est connu qu'à l'écriture du lot
+        ack.exceptionally(e -> {
+            System.out.println("Votre vote n'a pas pu être enregistré : " + e.getMessage());
+            return null;
+        });
     }
 
     /**
@@ -559,8 +677,12 @@ public class Application {
             notes = readGrades();
         }
 
-        EvaluationService.getInstance().addCompleteEvaluation(restaurant, username, comment, notes);
-        System.out.println("✅ Évaluation enregistrée avec succès !");
+        try {
+            EvaluationService.getInstance().addCompleteEvaluation(restaurant, username, comment, notes);
+            System.out.println("✅ Évaluation enregistrée avec succès !");
+        } catch (RateLimitExceededException e) {
+            System.out.println("⚠️ " + e.getMessage());
+        }
     }
 
     private static Map<EvaluationCriteria, Integer> readGrades() {
@@ -635,8 +757,12 @@ public class Application {
 
         editRestaurantAddress(restaurant);
 
-        boolean updated = RestaurantService.getInstance().updateRestaurant(restaurant);
-        System.out.println(updated ? "Restaurant mis à jour avec succès !" : "Erreur lors de la mise à jour.");
+        try {
+            boolean updated = RestaurantService.getInstance().updateRestaurant(restaurant);
+            System.out.println(updated ? "Restaurant mis à jour avec succès !" : "Erreur lors de la mise à jour.");
+        } catch (ConcurrentUpdateException e) {
+            System.out.println("⚠️ Ce restaurant a été modifié entre-temps par un autre utilisateur, vos modifications n'ont pas été enregistrées.");
+        }
     }
 
 
@@ -1,6 +1,7 @@
 package ch.hearc.ig.guideresto.services;
 
 import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.persistence.Page;
 import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
 import ch.hearc.ig.guideresto.persistence.mapper.CityMapper;
 
@@ -17,7 +18,7 @@ public class CityService {
      * Singleton pattern
      * @return instance unique de la classe CityService — créée si elle n'existe pas encore
      */
-    public static CityService getInstance()  {
+    public static synchronized CityService getInstance() {
         if (instance == null) {
             instance = new CityService();
         }
@@ -28,7 +29,17 @@ public class CityService {
      * @return liste de toutes les villes
      */
     public List<City> getAllCities() {
-        return cityMapper.findAll();
+        return JpaUtils.inReadOnly(em -> cityMapper.findAll());
+    }
+
+    /**
+     * Récupérer une page de villes, triées par nom
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, bornée par la taille maximale du mapper
+     * @return la page de villes
+     */
+    public Page<City> getCities(String cursor, int size) {
+        return JpaUtils.inReadOnly(em -> cityMapper.findPage(cursor, size));
     }
 
     /**
@@ -38,29 +49,26 @@ public class CityService {
      * @return la ville créée, ou null en cas d'erreur
      */
     public City addCity(String cityName, String zipCode) {
-        City city = new City(null, zipCode, cityName);
-        JpaUtils.inTransaction(em -> {
-            cityMapper.create(city, em); // persist → city.id est rempli
-        });
-        return city; // retourne la même entité
+        return JpaUtils.fromTransaction(em ->
+                cityMapper.create(new City(null, zipCode, cityName), em) // persist → city.id est rempli
+        );
     }
 
 
     /**
-     * Ajouter une ville si elle n'existe pas déjà, sinon la récupérer
+     * Ajouter une ville si elle n'existe pas déjà, sinon la récupérer.
+     * La ville existante est retrouvée par son nom normalisé (identifiant naturel), sans requête une fois en cache.
      * @param cityName - le nom de la ville
      * @param zipCode - le code postal de la ville
      * @return la ville existante ou nouvellement créée
      */
     public City addOrGetCity(String cityName, String zipCode) {
-        City city = cityMapper.findByName(cityName);
-        if (city == null) {
-            city = new City(null, zipCode, cityName);
-            City finalCity = city;
-            JpaUtils.inTransaction(em -> {
-            cityMapper.create(finalCity, em);
-            });
-        }
-        return cityMapper.findByName(cityName);
+        return JpaUtils.fromTransaction(em -> {
+            City city = cityMapper.findByName(cityName);
+            if (city == null) {
+                city = cityMapper.create(new City(null, zipCode, cityName), em);
+            }
+            return city;
+        });
     }
 }
@@ -0,0 +1,127 @@
+package ch.hearc.ig.guideresto.services;
+
+import ch.hearc.ig.guideresto.business.LikeVoter;
+import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
+import ch.hearc.ig.guideresto.persistence.mapper.BasicEvaluationMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Index en mémoire des likes du jour, par adresse IP et restaurant : une même adresse ne peut évaluer
+ * un restaurant qu'une fois par jour. Le contrôle se fait sans aller en base, dans un ensemble concurrent
+ * (lectures sans verrou, ajout par CAS dans la plupart des cas) qui ne garde que la journée en cours.
+ * <p>
+ * L'index unique {@code UX_LIKE_IP_REST_JOUR} sur {@code LIKES (adresse_ip, fk_rest, TRUNC(date_eval))}
+ * reste la référence : il rejette les doublons que l'index ne voit pas (autre instance de l'application,
+ * like enregistré juste avant minuit).
+ */
+public class DuplicateLikeService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DuplicateLikeService.class);
+
+    private final BasicEvaluationMapper basicEvaluationMapper = new BasicEvaluationMapper();
+    private final AtomicReference<Window> window = new AtomicReference<>(new Window(today()));
+    private static DuplicateLikeService instance;
+
+    private DuplicateLikeService() {
+    }
+
+    /**
+     * Singleton pattern
+     * @return instance unique de la classe DuplicateLikeService — créée si elle n'existe pas encore
+     */
+    public static synchronized DuplicateLikeService getInstance() {
+        if (instance == null) {
+            instance = new DuplicateLikeService();
+        }
+        return instance;
+    }
+
+    /**
+     * Réserver le like d'une adresse IP pour un restaurant, avant de l'écrire
+     * @param ipAddress - adresse IP de l'évaluateur
+     * @param restaurantId - identifiant du restaurant évalué
+     * @param visitDate - date du like
+     * @return true si l'adresse n'a pas encore évalué le restaurant ce jour-là, false s'il s'agit d'un doublon
+     */
+    public boolean claim(String ipAddress, int restaurantId, Date visitDate) {
+        Window current = windowOf(visitDate);
+        if (current == null) return true; // hors de la journée indexée : seule la base peut trancher
+        return current.voters().add(new LikeVoter(ipAddress, restaurantId));
+    }
+
+    /**
+     * Annuler la réservation d'un like dont l'écriture a échoué, pour qu'il puisse être soumis de nouveau
+     * @param ipAddress - adresse IP de l'évaluateur
+     * @param restaurantId - identifiant du restaurant évalué
+     * @param visitDate - date du like
+     */
+    public void release(String ipAddress, int restaurantId, Date visitDate) {
+        Window current = windowOf(visitDate);
+        if (current != null) {
+            current.voters().remove(new LikeVoter(ipAddress, restaurantId));
+        }
+    }
+
+    /**
+     * Oublier les likes du jour d'un restaurant supprimé
+     * @param restaurantId - identifiant du restaurant
+     */
+    public void forget(int restaurantId) {
+        window.get().voters().removeIf(voter -> voter.restaurantId() == restaurantId);
+    }
+
+    /**
+     * Reconstruire l'index à partir des likes du jour en base, à lancer au démarrage
+     * @return le nombre de likes indexés
+     */
+    public int rebuild() {
+        long day = today();
+        Date since = Date.from(LocalDate.ofEpochDay(day).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        List<LikeVoter> voters = JpaUtils.inReadOnly(em -> basicEvaluationMapper.findVotersSince(since));
+        Window rebuilt = new Window(day);
+        rebuilt.voters().addAll(voters);
+        window.set(rebuilt);
+        LOG.info("Index des likes du jour reconstruit : {} likes", voters.size());
+        return voters.size();
+    }
+
+    /**
+     * Retourne la fenêtre de la journée du like, en passant à une nouvelle fenêtre vide au changement de jour.
+     * @return la fenêtre, ou null si le like est antérieur à la journée indexée
+     */
+    private Window windowOf(Date visitDate) {
+        long day = dayOf(visitDate);
+        Window current = window.get();
+        while (day > current.day()) {
+            window.compareAndSet(current, new Window(day)); // les likes de la veille ne sont plus utiles
+            current = window.get();
+        }
+        return day == current.day() ? current : null;
+    }
+
+    private static long dayOf(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    private static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Likes d'une journée, en nombre de jours depuis l'époque.
+     */
+    private record Window(long day, Set<LikeVoter> voters) {
+        Window(long day) {
+            this(day, ConcurrentHashMap.newKeySet());
+        }
+    }
+}
@@ -1,26 +1,44 @@
 package ch.hearc.ig.guideresto.services;
 
 import ch.hearc.ig.guideresto.business.*;
+import ch.hearc.ig.guideresto.persistence.FetchPlan;
+import ch.hearc.ig.guideresto.persistence.Page;
 import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
 import ch.hearc.ig.guideresto.persistence.mapper.BasicEvaluationMapper;
 import ch.hearc.ig.guideresto.persistence.mapper.CompleteEvaluationMapper;
 import ch.hearc.ig.guideresto.persistence.mapper.EvaluationCriteriaMapper;
 import ch.hearc.ig.guideresto.persistence.mapper.GradeMapper;
-import jakarta.persistence.EntityManager;
+import ch.hearc.ig.guideresto.persistence.mapper.RestaurantRatingMapper;
+import org.hibernate.exception.ConstraintViolationException;
 
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-
-import static ch.hearc.ig.guideresto.persistence.jpa.JpaUtils.getEntityManager;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class EvaluationService {
     private final BasicEvaluationMapper basicEvaluationMapper = new BasicEvaluationMapper();
     private final CompleteEvaluationMapper completeEvaluationMapper = new CompleteEvaluationMapper();
     private final GradeMapper gradeMapper  = new GradeMapper();
     private final EvaluationCriteriaMapper evalCriteriaMapper = new EvaluationCriteriaMapper();
+    private final RestaurantRatingMapper ratingMapper = new RestaurantRatingMapper();
+    private final DuplicateLikeService likeIndex = DuplicateLikeService.getInstance();
+    // Débits par adresse IP et par utilisateur, contrôlés avant toute transaction
+    private final RateLimiter likesPerIp = new RateLimiter("likes", 30, Duration.ofMinutes(1), 10);
+    private final RateLimiter reviewsPerIp = new RateLimiter("évaluations", 10, Duration.ofMinutes(1), 5);
+    private final RateLimiter reviewsPerUser = new RateLimiter("évaluations", 5, Duration.ofMinutes(1), 3);
+    /** Délai maximal d'écriture du tampon de likes à la fermeture de l'application. */
+    private static final Duration LIKE_BUFFER_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+    /** Attente maximale d'une place dans le tampon de likes plein avant de refuser le like. */
+    private static final Duration LIKE_ADMISSION_TIMEOUT = Duration.ofSeconds(5);
+    private volatile WriteBehindBuffer<LikeRequest, BasicEvaluation> likeBuffer; // null : écriture synchrone
     private static EvaluationService instance;
 
     private EvaluationService() {
@@ -30,7 +48,7 @@ public class EvaluationService {
      * Singleton pattern
      * @return instance unique de la classe EvaluationService — créée si elle n'existe pas encore
      */
-    public static EvaluationService getInstance() {
+    public static synchronized EvaluationService getInstance() {
         if (instance == null) {
             instance = new EvaluationService();
         }
@@ -38,52 +56,166 @@ public class EvaluationService {
     }
 
     /**
-     * Ajouter une évaluation basique pour un restaurant
+     * Ajouter une évaluation basique pour un restaurant, et la compter dans les compteurs du restaurant.
+     * Une même adresse IP ne peut évaluer un restaurant qu'une fois par jour.
      * @param restaurant - le restaurant évalué
      * @param likeRestaurant - true si le restaurant est aimé, false sinon
-     * @return l'évaluation basique créée, ou null en cas d'erreur
+     * @return l'évaluation basique créée, ou null en cas d'erreur ou si l'adresse a déjà évalué le restaurant aujourd'hui
+     * @throws RateLimitExceededException si l'adresse IP a soumis trop de likes récemment
      */
     public BasicEvaluation addBasicEvaluation(Restaurant restaurant, Boolean likeRestaurant) {
         if (restaurant == null || likeRestaurant == null) return null;
-        String ip;
+        LikeRequest request = new LikeRequest(restaurant, likeRestaurant, new Date(), localIp());
+        likesPerIp.acquire(request.ipAddress());
+        if (!claim(request)) return null;
         try {
-            ip = Inet4Address.getLocalHost().toString();
-        } catch (UnknownHostException e) {
-            ip = "Indisponible";
+            return writeBasicEvaluations(List.of(request)).get(0);
+        } catch (RuntimeException e) {
+            if (isDuplicate(e)) return null;
+            release(request);
+            throw e;
+        }
+    }
+
+    /**
+     * Activer l'écriture différée des évaluations basiques : {@link #submitBasicEvaluation} place alors les likes
+     * dans un tampon borné, écrit en arrière-plan par lots d'une transaction chacun. Le tampon est vidé
+     * à la fermeture de {@link JpaUtils}. Sans effet si l'écriture différée est déjà active.
+     * @param capacity - nombre maximal de likes en attente ; au-delà, les soumissions attendent une place quelques secondes
+     * @param batchSize - nombre maximal de likes écrits par transaction
+     * @param maxDelay - attente maximale d'un like avant son écriture
+     */
+    public synchronized void enableWriteBehind(int capacity, int batchSize, Duration maxDelay) {
+        if (likeBuffer != null) return;
+        WriteBehindBuffer<LikeRequest, BasicEvaluation> buffer = new WriteBehindBuffer<>(
+                "guideresto-likes", capacity, batchSize, maxDelay, LIKE_ADMISSION_TIMEOUT, this::writeBasicEvaluations);
+        JpaUtils.onClose(() -> buffer.close(LIKE_BUFFER_CLOSE_TIMEOUT));
+        likeBuffer = buffer;
+    }
+
+    /**
+     * Soumettre une évaluation basique pour un restaurant. Avec l'écriture différée, le like est écrit
+     * plus tard avec d'autres, dans une même transaction ; sinon, il est écrit immédiatement.
+     * @param restaurant - le restaurant évalué
+     * @param likeRestaurant - true si le restaurant est aimé, false sinon
+     * @return un futur complété par l'évaluation créée une fois validée en base (null si l'adresse a déjà évalué
+     * le restaurant aujourd'hui), ou en erreur si elle n'a pas pu être écrite (débit dépassé, tampon plein ou fermé,
+     * échec de la transaction)
+     * @see #enableWriteBehind(int, int, Duration)
+     */
+    public CompletableFuture<BasicEvaluation> submitBasicEvaluation(Restaurant restaurant, Boolean likeRestaurant) {
+        if (restaurant == null || likeRestaurant == null) return CompletableFuture.completedFuture(null);
+        WriteBehindBuffer<LikeRequest, BasicEvaluation> buffer = likeBuffer;
+        if (buffer == null) {
+            try {
+                return CompletableFuture.completedFuture(addBasicEvaluation(restaurant, likeRestaurant));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
         }
-        BasicEvaluation eval = new BasicEvaluation(null, new Date(), restaurant, likeRestaurant, ip);
-        JpaUtils.inTransaction(em -> {
-            basicEvaluationMapper.create(eval, em);
+        LikeRequest request = new LikeRequest(restaurant, likeRestaurant, new Date(), localIp());
+        try {
+            likesPerIp.acquire(request.ipAddress());
+        } catch (RateLimitExceededException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!claim(request)) return CompletableFuture.completedFuture(null);
+        return buffer.submit(request).handle((eval, failure) -> {
+            if (failure == null || isDuplicate(failure)) return eval;
+            release(request);
+            throw failure instanceof CompletionException completion ? completion : new CompletionException(failure);
+        });
+    }
+
+    /**
+     * Écrit des évaluations basiques dans une seule transaction. Les likes sont insérés par {@code createAll},
+     * en batchs JDBC vidés du contexte de persistance. Les votes sont additionnés par restaurant :
+     * un seul UPDATE des compteurs par restaurant, dans l'ordre des identifiants pour que deux lots simultanés
+     * verrouillent les lignes dans le même ordre.
+     */
+    private List<BasicEvaluation> writeBasicEvaluations(List<LikeRequest> requests) {
+        List<BasicEvaluation> created = JpaUtils.fromTransaction(em -> {
+            List<BasicEvaluation> evals = new ArrayList<>(requests.size());
+            Map<Integer, long[]> votes = new TreeMap<>();
+            for (LikeRequest request : requests) {
+                evals.add(new BasicEvaluation(null, request.visitDate(), request.restaurant(), request.like(), request.ipAddress()));
+                votes.computeIfAbsent(request.restaurant().getId(), id -> new long[2])[request.like() ? 0 : 1]++;
+            }
+            List<BasicEvaluation> inserted = basicEvaluationMapper.createAll(evals, em);
+            votes.forEach((restaurantId, count) -> ratingMapper.addVotes(restaurantId, count[0], count[1], em));
+            return inserted;
         });
-        return eval;
+        for (LikeRequest request : requests) {
+            LeaderboardService.getInstance().recordVote(request.restaurant(), request.like()); // après validation uniquement
+        }
+        return created;
+    }
+
+    private boolean claim(LikeRequest request) {
+        return likeIndex.claim(request.ipAddress(), request.restaurant().getId(), request.visitDate());
+    }
+
+    private void release(LikeRequest request) {
+        likeIndex.release(request.ipAddress(), request.restaurant().getId(), request.visitDate());
+    }
+
+    /**
+     * Indique si l'écriture a été rejetée par une contrainte d'unicité : ici, l'index unique des likes
+     * par adresse IP, restaurant et jour, qui intercepte les doublons non vus par l'index en mémoire.
+     */
+    private static boolean isDuplicate(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                return violation.getKind() == ConstraintViolationException.ConstraintKind.UNIQUE;
+            }
+        }
+        return false;
+    }
+
+    private static String localIp() {
+        try {
+            return Inet4Address.getLocalHost().toString();
+        } catch (UnknownHostException e) {
+            return "Indisponible";
+        }
     }
 
     /**
-     * Ajouter une évaluation complète pour un restaurant
+     * Ajouter une évaluation complète pour un restaurant, et ses notes aux moyennes du restaurant
      * @param restaurant - le restaurant évalué
      * @param username - le nom d'utilisateur de l'évaluateur
      * @param comment - le commentaire de l'évaluation
      * @param notes - la carte des critères d'évaluation et leurs notes associées
      * @return CompleteEvaluation ajoutée, ou null en cas d'erreur
+     * @throws RateLimitExceededException si l'adresse IP ou l'utilisateur a soumis trop d'évaluations récemment
      */
 
     public CompleteEvaluation addCompleteEvaluation(Restaurant restaurant, String username,
                                                     String comment, Map<EvaluationCriteria, Integer> notes) {
         if (restaurant == null || username == null || notes == null) return null;
-        CompleteEvaluation eval = new CompleteEvaluation(null, new Date(), restaurant, comment, username);
-
-        for (Map.Entry<EvaluationCriteria, Integer> entry : notes.entrySet()) {
-            Grade grade = new Grade(null, entry.getValue(), eval, entry.getKey());
-            eval.getGrades().add(grade);
+        String ipAddress = localIp();
+        reviewsPerIp.acquire(ipAddress);
+        try {
+            reviewsPerUser.acquire(username);
+        } catch (RateLimitExceededException e) {
+            reviewsPerIp.release(ipAddress); // refus de l'utilisateur : la demande ne compte pas pour les autres de l'adresse
+            throw e;
         }
-        JpaUtils.inTransaction(em -> {
-            completeEvaluationMapper.create(eval, em);
-            for (Grade g : eval.getGrades()) {
-                gradeMapper.create(g, em);
+        Date visitDate = new Date();
+
+        CompleteEvaluation created = JpaUtils.fromTransaction(em -> {
+            CompleteEvaluation eval = new CompleteEvaluation(null, visitDate, restaurant, comment, username);
+            for (Map.Entry<EvaluationCriteria, Integer> entry : notes.entrySet()) {
+                Grade grade = new Grade(null, entry.getValue(), eval, entry.getKey());
+                eval.getGrades().add(grade);
             }
+            // les notes suivent par cascade : un INSERT du commentaire, puis un batch JDBC pour toutes ses notes
+            completeEvaluationMapper.create(eval, em);
+            ratingMapper.addReview(restaurant.getId(), eval.getGrades(), em);
+            return eval;
         });
-
-        return eval;
+        LeaderboardService.getInstance().recordReview(restaurant, notes.values());
+        return created;
     }
 
     /**
@@ -92,13 +224,7 @@ public class EvaluationService {
      * @return la liste des évaluations basiques
      */
     public List<BasicEvaluation> getBasicEvaluations(Restaurant restaurant) {
-        if (restaurant == null) return List.of();
-
-        try (EntityManager em = getEntityManager()) {
-            return em.createNamedQuery("BasicEvaluation.findByRestaurant", BasicEvaluation.class)
-                    .setParameter("restaurant", restaurant)
-                    .getResultList();
-        }
+        return JpaUtils.inReadOnly(em -> basicEvaluationMapper.findByRestaurant(restaurant));
     }
 
     /**
@@ -107,7 +233,92 @@ public class EvaluationService {
      * @return la liste des évaluations complètes
      */
     public List<CompleteEvaluation> getCompleteEvaluations(Restaurant restaurant) {
-        return completeEvaluationMapper.findByRestaurant(restaurant);
+        return JpaUtils.inReadOnly(em -> completeEvaluationMapper.findByRestaurant(restaurant));
+    }
+
+    /**
+     * Récupérer une page des évaluations basiques d'un restaurant, de la plus ancienne à la plus récente
+     * @param restaurant - le restaurant dont on veut les évaluations
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page
+     * @return la page d'évaluations basiques
+     */
+    public Page<BasicEvaluation> getBasicEvaluations(Restaurant restaurant, String cursor, int size) {
+        return JpaUtils.inReadOnly(em -> basicEvaluationMapper.findPageByRestaurant(restaurant, cursor, size));
+    }
+
+    /**
+     * Récupérer une page des évaluations complètes d'un restaurant avec leurs notes, de la plus ancienne à la plus récente
+     * @param restaurant - le restaurant dont on veut les évaluations
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page
+     * @return la page d'évaluations complètes
+     */
+    public Page<CompleteEvaluation> getCompleteEvaluations(Restaurant restaurant, String cursor, int size) {
+        return JpaUtils.inReadOnly(em -> completeEvaluationMapper.findPageByRestaurant(restaurant, FetchPlan.DETAIL, cursor, size));
+    }
+
+    /**
+     * Récupérer les compteurs d'évaluations d'un restaurant, sans relire ses évaluations
+     * @param restaurant - le restaurant dont on veut les compteurs
+     * @return les compteurs du restaurant, à zéro s'il n'a encore aucune évaluation
+     */
+    public RestaurantRating getRating(Restaurant restaurant) {
+        RestaurantRating rating = JpaUtils.inReadOnly(em -> ratingMapper.findById(restaurant.getId()));
+        return rating != null ? rating : new RestaurantRating(restaurant.getId());
+    }
+
+    /**
+     * Récupérer les moyennes par critère d'un restaurant, sans relire ses notes
+     * @param restaurant - le restaurant dont on veut les moyennes
+     * @return les compteurs par critère, avec leur critère
+     */
+    public List<CriteriaRating> getCriteriaRatings(Restaurant restaurant) {
+        return JpaUtils.inReadOnly(em -> ratingMapper.findCriteriaRatings(restaurant.getId()));
+    }
+
+    /**
+     * Recalculer les compteurs d'évaluations de tous les restaurants à partir des évaluations en base
+     * @return le nombre de restaurants recalculés
+     */
+    public int rebuildRatings() {
+        return JpaUtils.fromTransaction(ratingMapper::rebuild);
+    }
+
+    /**
+     * Compter en base les likes et dislikes d'un restaurant, sans charger ses évaluations
+     * @param restaurant - le restaurant dont on veut les compteurs
+     * @return les compteurs du restaurant
+     */
+    public LikeCount countLikes(Restaurant restaurant) {
+        return JpaUtils.inReadOnly(em -> basicEvaluationMapper.countLikes(restaurant.getId()));
+    }
+
+    /**
+     * Compter en base les likes et dislikes de plusieurs restaurants, par requêtes groupées
+     * @param restaurantIds - identifiants des restaurants
+     * @return les compteurs par identifiant de restaurant ; les restaurants sans évaluation basique sont absents
+     */
+    public Map<Integer, LikeCount> countLikes(Collection<Integer> restaurantIds) {
+        return JpaUtils.inReadOnly(em -> basicEvaluationMapper.countLikes(restaurantIds));
+    }
+
+    /**
+     * Calculer en base la note moyenne de plusieurs restaurants, tous critères confondus
+     * @param restaurantIds - identifiants des restaurants
+     * @return les moyennes par identifiant de restaurant ; les restaurants sans note sont absents
+     */
+    public Map<Integer, GradeAverage> getGradeAverages(Collection<Integer> restaurantIds) {
+        return JpaUtils.inReadOnly(em -> gradeMapper.findAverages(restaurantIds));
+    }
+
+    /**
+     * Calculer en base la note moyenne d'un restaurant pour chaque critère, sans charger ses notes
+     * @param restaurant - le restaurant dont on veut les moyennes
+     * @return les moyennes par critère
+     */
+    public List<CriteriaGradeAverage> getCriteriaGradeAverages(Restaurant restaurant) {
+        return JpaUtils.inReadOnly(em -> gradeMapper.findCriteriaAverages(restaurant.getId()));
     }
 
     /**
@@ -116,6 +327,7 @@ public class EvaluationService {
      * @param evaluations    La liste des évaluations à parcourir
      * @param like Veut-on le nombre d'évaluations positives ou négatives ?
      * @return Le nombre d'évaluations positives ou négatives trouvées
+     * @see #countLikes(Restaurant) pour compter en base sans charger les évaluations
      */
     public long countLikes(List<BasicEvaluation> evaluations, boolean like) {
         return evaluations.stream()
@@ -128,7 +340,12 @@ public class EvaluationService {
      * @return la liste des critères d'évaluation
      */
     public List<EvaluationCriteria> getAllCriteria() {
-        return evalCriteriaMapper.findAll();
+        return JpaUtils.inReadOnly(em -> evalCriteriaMapper.findAll());
     }
 
-}
\ No newline at end of file
+    /**
+     * Like en attente d'écriture, horodaté à sa soumission.
+     */
+    private record LikeRequest(Restaurant restaurant, boolean like, Date visitDate, String ipAddress) {
+    }
+}
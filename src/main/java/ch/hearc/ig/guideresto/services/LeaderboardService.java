@@ -0,0 +1,346 @@
+package ch.hearc.ig.guideresto.services;
+
+import ch.hearc.ig.guideresto.business.GradeAverage;
+import ch.hearc.ig.guideresto.business.LikeCount;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantPlacement;
+import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
+import ch.hearc.ig.guideresto.persistence.mapper.BasicEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.mapper.GradeMapper;
+import ch.hearc.ig.guideresto.persistence.mapper.RestaurantMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+/**
+ * Classements des meilleurs restaurants (général, par ville et par type), tenus en mémoire.
+ * <p>
+ * Chaque classement est un ensemble trié concurrent (skip list) : la mise à jour d'un restaurant après
+ * une évaluation coûte O(log n), la lecture des k premiers O(k), sans trier les restaurants à chaque demande.
+ * Le score combine la moyenne des notes et la part de likes, chacune pondérée par un a priori bayésien
+ * (moyenne générale) : un restaurant avec peu d'évaluations reste proche de la moyenne au lieu de
+ * prendre la tête sur une seule note de 5/5. Les a priori sont fixés à la reconstruction, pour que
+ * les scores des autres restaurants ne changent pas à chaque évaluation.
+ */
+public class LeaderboardService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeaderboardService.class);
+
+    /** Poids de l'a priori, en nombre de notes fictives à la moyenne générale. */
+    static final double GRADE_PRIOR_WEIGHT = 10;
+    /** Poids de l'a priori, en nombre de votes fictifs à la part générale de likes. */
+    static final double VOTE_PRIOR_WEIGHT = 10;
+    /** Part de la moyenne des notes dans le score, le reste revenant à la part de likes. */
+    static final double GRADE_SHARE = 0.75;
+    static final int MIN_GRADE = 1;
+    static final int MAX_GRADE = 5;
+
+    /** Restaurants traités par tâche de reconstruction (limite des listes IN d'Oracle). */
+    private static final int REBUILD_CHUNK = 1000;
+    private static final int REBUILD_THREADS = 4;
+
+    private static final Comparator<Standing> BEST_FIRST =
+            Comparator.comparingDouble(Standing::score).reversed().thenComparingInt(Standing::restaurantId);
+
+    private final RestaurantMapper restaurantMapper = new RestaurantMapper();
+    private final BasicEvaluationMapper basicEvaluationMapper = new BasicEvaluationMapper();
+    private final GradeMapper gradeMapper = new GradeMapper();
+    private volatile Rankings rankings = new Rankings(Priors.DEFAULT);
+    private static LeaderboardService instance;
+
+    private LeaderboardService() {
+    }
+
+    /**
+     * Singleton pattern
+     * @return instance unique de la classe LeaderboardService — créée si elle n'existe pas encore
+     */
+    public static synchronized LeaderboardService getInstance() {
+        if (instance == null) {
+            instance = new LeaderboardService();
+        }
+        return instance;
+    }
+
+    /**
+     * Reconstruire tous les classements à partir des évaluations en base. Les compteurs sont lus en parallèle,
+     * par tranches de restaurants, avec les requêtes groupées des mappers ; les nouveaux classements remplacent
+     * les anciens d'un bloc. Les évaluations ajoutées pendant la reconstruction peuvent ne pas être comptées :
+     * à lancer au démarrage, ou de nouveau ensuite pour corriger une dérive.
+     * @return le nombre de restaurants classés
+     */
+    public int rebuild() {
+        long start = System.nanoTime();
+        List<RestaurantPlacement> placements = JpaUtils.inReadOnly(em -> restaurantMapper.findPlacements());
+
+        List<List<RestaurantPlacement>> chunks = new ArrayList<>();
+        for (int from = 0; from < placements.size(); from += REBUILD_CHUNK) {
+            chunks.add(placements.subList(from, Math.min(from + REBUILD_CHUNK, placements.size())));
+        }
+
+        // 1. Compteurs lus en parallèle, chaque tâche avec son propre EntityManager
+        List<Counts> counts = new ArrayList<>(placements.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(REBUILD_THREADS, chunks.size())), task -> {
+            Thread thread = new Thread(task, "leaderboard-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<List<Counts>>> tasks = chunks.stream()
+                    .map(chunk -> CompletableFuture.supplyAsync(() -> loadCounts(chunk), executor))
+                    .toList();
+            tasks.forEach(task -> counts.addAll(task.join()));
+        } finally {
+            executor.shutdown();
+        }
+
+        // 2. A priori calculés sur l'ensemble, puis classements remplis en parallèle
+        Rankings rebuilt = new Rankings(Priors.of(counts));
+        counts.parallelStream().forEach(rebuilt::add);
+        rankings = rebuilt;
+
+        LOG.info("Classements reconstruits : {} restaurants en {} ms", counts.size(), (System.nanoTime() - start) / 1_000_000);
+        return counts.size();
+    }
+
+    private List<Counts> loadCounts(List<RestaurantPlacement> chunk) {
+        List<Integer> ids = chunk.stream().map(RestaurantPlacement::id).toList();
+        return JpaUtils.inReadOnly(em -> {
+            Map<Integer, LikeCount> likes = basicEvaluationMapper.countLikes(ids);
+            Map<Integer, GradeAverage> grades = gradeMapper.findAverages(ids);
+            List<Counts> counts = new ArrayList<>(chunk.size());
+            for (RestaurantPlacement placement : chunk) {
+                LikeCount like = likes.getOrDefault(placement.id(), LikeCount.none(placement.id()));
+                GradeAverage grade = grades.get(placement.id());
+                counts.add(new Counts(placement, like.likes(), like.dislikes(),
+                        grade == null ? 0 : grade.count(), grade == null ? 0 : grade.average() * grade.count()));
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * Compter un like ou un dislike enregistré pour un restaurant
+     * @param restaurant - le restaurant évalué
+     * @param like - true pour un like, false pour un dislike
+     */
+    public void recordVote(Restaurant restaurant, boolean like) {
+        rankings.update(RestaurantPlacement.of(restaurant), c -> c.withVote(like));
+    }
+
+    /**
+     * Compter les notes d'une évaluation complète enregistrée pour un restaurant
+     * @param restaurant - le restaurant évalué
+     * @param grades - les notes de l'évaluation
+     */
+    public void recordReview(Restaurant restaurant, Collection<Integer> grades) {
+        long sum = grades.stream().mapToLong(Integer::longValue).sum();
+        rankings.update(RestaurantPlacement.of(restaurant), c -> c.withGrades(grades.size(), sum));
+    }
+
+    /**
+     * Ajouter un restaurant aux classements, ou le déplacer après un changement de nom, de ville ou de type
+     * @param restaurant - le restaurant ajouté ou modifié
+     */
+    public void place(Restaurant restaurant) {
+        rankings.update(RestaurantPlacement.of(restaurant), c -> c);
+    }
+
+    /**
+     * Retirer un restaurant supprimé des classements
+     * @param restaurantId - identifiant du restaurant
+     */
+    public void remove(Integer restaurantId) {
+        rankings.remove(restaurantId);
+    }
+
+    /**
+     * @param k - nombre de restaurants
+     * @return les k meilleurs restaurants, du meilleur au moins bon
+     */
+    public List<Standing> top(int k) {
+        return first(rankings.overall, k);
+    }
+
+    /**
+     * @param cityId - identifiant de la ville
+     * @param k - nombre de restaurants
+     * @return les k meilleurs restaurants de la ville, du meilleur au moins bon
+     */
+    public List<Standing> topInCity(Integer cityId, int k) {
+        return first(rankings.byCity.get(cityId), k);
+    }
+
+    /**
+     * @param typeId - identifiant du type de restaurant
+     * @param k - nombre de restaurants
+     * @return les k meilleurs restaurants du type, du meilleur au moins bon
+     */
+    public List<Standing> topOfType(Integer typeId, int k) {
+        return first(rankings.byType.get(typeId), k);
+    }
+
+    private static List<Standing> first(NavigableSet<Standing> ranking, int k) {
+        if (ranking == null || k <= 0) return List.of();
+        List<Standing> top = new ArrayList<>(k);
+        Set<Integer> seen = new HashSet<>();
+        for (Standing standing : ranking) {
+            // pendant une mise à jour, l'ancienne et la nouvelle position d'un restaurant peuvent coexister
+            if (seen.add(standing.restaurantId())) {
+                top.add(standing);
+                if (top.size() == k) break;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Position d'un restaurant dans les classements.
+     *
+     * @param restaurantId identifiant du restaurant
+     * @param name nom du restaurant
+     * @param cityId identifiant de la ville
+     * @param typeId identifiant du type de restaurant
+     * @param likes nombre de likes
+     * @param dislikes nombre de dislikes
+     * @param gradeCount nombre de notes
+     * @param averageGrade moyenne des notes (0 sans note)
+     * @param score score de classement, entre 0 et 1
+     */
+    public record Standing(int restaurantId, String name, int cityId, int typeId, long likes, long dislikes,
+                           long gradeCount, double averageGrade, double score) {
+    }
+
+    /**
+     * Compteurs bruts d'un restaurant, à partir desquels son score est calculé.
+     */
+    private record Counts(RestaurantPlacement placement, long likes, long dislikes, long gradeCount, double gradeSum) {
+
+        static Counts empty(RestaurantPlacement placement) {
+            return new Counts(placement, 0, 0, 0, 0);
+        }
+
+        Counts withVote(boolean like) {
+            return new Counts(placement, likes + (like ? 1 : 0), dislikes + (like ? 0 : 1), gradeCount, gradeSum);
+        }
+
+        Counts withGrades(long count, long sum) {
+            return new Counts(placement, likes, dislikes, gradeCount + count, gradeSum + sum);
+        }
+
+        Counts at(RestaurantPlacement newPlacement) {
+            return new Counts(newPlacement, likes, dislikes, gradeCount, gradeSum);
+        }
+    }
+
+    /**
+     * A priori bayésiens : moyenne générale des notes et part générale de likes.
+     */
+    private record Priors(double meanGrade, double likeRatio) {
+
+        static final Priors DEFAULT = new Priors((MIN_GRADE + MAX_GRADE) / 2.0, 0.5);
+
+        static Priors of(Collection<Counts> counts) {
+            double gradeSum = 0;
+            long grades = 0, likes = 0, votes = 0;
+            for (Counts c : counts) {
+                gradeSum += c.gradeSum();
+                grades += c.gradeCount();
+                likes += c.likes();
+                votes += c.likes() + c.dislikes();
+            }
+            return new Priors(grades == 0 ? DEFAULT.meanGrade : gradeSum / grades,
+                    votes == 0 ? DEFAULT.likeRatio : (double) likes / votes);
+        }
+
+        Standing standing(Counts c) {
+            double grade = (GRADE_PRIOR_WEIGHT * meanGrade + c.gradeSum()) / (GRADE_PRIOR_WEIGHT + c.gradeCount());
+            double gradeScore = (grade - MIN_GRADE) / (MAX_GRADE - MIN_GRADE);
+            double voteScore = (VOTE_PRIOR_WEIGHT * likeRatio + c.likes()) / (VOTE_PRIOR_WEIGHT + c.likes() + c.dislikes());
+            double score = GRADE_SHARE * gradeScore + (1 - GRADE_SHARE) * voteScore;
+            RestaurantPlacement p = c.placement();
+            return new Standing(p.id(), p.name(), p.cityId(), p.typeId(), c.likes(), c.dislikes(), c.gradeCount(),
+                    c.gradeCount() == 0 ? 0 : c.gradeSum() / c.gradeCount(), score);
+        }
+    }
+
+    /**
+     * Jeu complet de classements, remplacé d'un bloc à chaque reconstruction.
+     */
+    private static final class Rankings {
+        private final Priors priors;
+        private final ConcurrentHashMap<Integer, Counts> counts = new ConcurrentHashMap<>();
+        private final NavigableSet<Standing> overall = new ConcurrentSkipListSet<>(BEST_FIRST);
+        private final ConcurrentHashMap<Integer, NavigableSet<Standing>> byCity = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Integer, NavigableSet<Standing>> byType = new ConcurrentHashMap<>();
+
+        Rankings(Priors priors) {
+            this.priors = priors;
+        }
+
+        void add(Counts c) {
+            counts.put(c.placement().id(), c);
+            insert(priors.standing(c));
+        }
+
+        /**
+         * Met à jour les compteurs d'un restaurant et le replace dans ses classements. Les mises à jour d'un même
+         * restaurant sont sérialisées par {@link ConcurrentHashMap#compute} ; celles de restaurants différents
+         * ne se bloquent pas.
+         */
+        void update(RestaurantPlacement placement, UnaryOperator<Counts> change) {
+            counts.compute(placement.id(), (id, current) -> {
+                Counts updated = change.apply(current == null ? Counts.empty(placement) : current.at(placement));
+                // le score est recalculé avec les mêmes a priori : previous est égal à l'élément classé
+                Standing previous = current == null ? null : priors.standing(current);
+                Standing next = priors.standing(updated);
+                if (previous == null) {
+                    insert(next);
+                } else if (BEST_FIRST.compare(previous, next) == 0) {
+                    // même score : le nouvel élément serait vu comme un doublon, il faut d'abord retirer l'ancien
+                    delete(previous);
+                    insert(next);
+                } else {
+                    insert(next); // insérer avant de retirer : le restaurant ne disparaît pas des classements
+                    delete(previous);
+                }
+                return updated;
+            });
+        }
+
+        void remove(Integer restaurantId) {
+            counts.computeIfPresent(restaurantId, (id, current) -> {
+                delete(priors.standing(current));
+                return null;
+            });
+        }
+
+        private void insert(Standing standing) {
+            overall.add(standing);
+            byCity.computeIfAbsent(standing.cityId(), id -> new ConcurrentSkipListSet<>(BEST_FIRST)).add(standing);
+            byType.computeIfAbsent(standing.typeId(), id -> new ConcurrentSkipListSet<>(BEST_FIRST)).add(standing);
+        }
+
+        private void delete(Standing standing) {
+            overall.remove(standing);
+            NavigableSet<Standing> city = byCity.get(standing.cityId());
+            if (city != null) city.remove(standing);
+            NavigableSet<Standing> type = byType.get(standing.typeId());
+            if (type != null) type.remove(standing);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ch.hearc.ig.guideresto.services;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * Levée lorsqu'une adresse IP ou un utilisateur dépasse le débit d'évaluations autorisé. Rien n'a été écrit :
+ * la demande est refusée avant l'ouverture de toute transaction, et peut être renouvelée après le délai indiqué.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(String key, Duration retryAfter) {
+        super("Trop de demandes pour " + key + ", réessayer dans " + Math.max(1, (retryAfter.toMillis() + 999) / 1000) + " s");
+        this.key = key;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return la clé limitée (adresse IP ou utilisateur)
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return le délai après lequel une nouvelle demande sera acceptée
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
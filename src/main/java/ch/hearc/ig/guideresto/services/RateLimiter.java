@@ -0,0 +1,117 @@
+package ch.hearc.ig.guideresto.services;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limiteur de débit par clé (adresse IP, utilisateur), équivalent à un seau à jetons, selon l'algorithme GCRA :
+ * chaque clé ne garde que l'instant théorique de sa prochaine demande, mis à jour par CAS, sans verrou.
+ * Une demande est acceptée si elle n'arrive pas plus de {@code burst - 1} intervalles avant cet instant.
+ * <p>
+ * Une clé dont le seau est de nouveau plein ne porte plus d'information : elle est retirée lors du nettoyage
+ * périodique, déclenché par les demandes elles-mêmes, ce qui borne la mémoire au nombre de clés actives.
+ */
+public class RateLimiter {
+
+    /** Intervalle minimal entre deux nettoyages des clés inactives. */
+    private static final long EVICTION_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final String name;
+    private final long emissionIntervalNanos;
+    private final long toleranceNanos;
+    private final ConcurrentMap<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+    private final AtomicLong lastEviction = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param name - nom du limiteur, repris dans les messages de refus
+     * @param permits - nombre de demandes autorisées par période, en régime établi
+     * @param period - période
+     * @param burst - nombre de demandes acceptées d'affilée par une clé inactive
+     */
+    public RateLimiter(String name, int permits, Duration period, int burst) {
+        if (permits < 1 || burst < 1) {
+            throw new IllegalArgumentException("Le débit et la rafale doivent être positifs");
+        }
+        this.name = name;
+        this.emissionIntervalNanos = period.toNanos() / permits;
+        this.toleranceNanos = emissionIntervalNanos * (burst - 1);
+    }
+
+    /**
+     * Consommer une demande pour une clé
+     * @param key - clé limitée
+     * @throws RateLimitExceededException si la clé a dépassé son débit
+     */
+    public void acquire(String key) {
+        long wait = tryAcquire(key);
+        if (wait > 0) {
+            throw new RateLimitExceededException(name + " " + key, Duration.ofNanos(wait));
+        }
+    }
+
+    /**
+     * Consommer une demande pour une clé, si son débit le permet
+     * @param key - clé limitée
+     * @return 0 si la demande est acceptée, sinon l'attente en nanosecondes avant qu'elle le soit
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        evictIdle(now);
+        AtomicLong arrival = arrivals.get(key);
+        if (arrival == null) {
+            arrival = arrivals.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long theoretical = arrival.get();
+            long allowedAt = theoretical - toleranceNanos;
+            if (now - allowedAt < 0) {
+                return allowedAt - now;
+            }
+            long next = Math.max(theoretical - now, 0) + now + emissionIntervalNanos;
+            if (arrival.compareAndSet(theoretical, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Rendre une demande consommée par {@link #acquire} ou {@link #tryAcquire} mais finalement refusée ailleurs
+     * (par un autre limiteur), pour qu'elle ne soit pas décomptée du débit de la clé. Le seau ne dépasse jamais
+     * sa capacité : une clé revenue à l'état inactif entre-temps reste inchangée.
+     * @param key - clé limitée
+     */
+    public void release(String key) {
+        AtomicLong arrival = arrivals.get(key);
+        if (arrival == null) return;
+        long now = System.nanoTime();
+        while (true) {
+            long theoretical = arrival.get();
+            long previous = Math.max(theoretical - emissionIntervalNanos, now);
+            if (previous - theoretical >= 0 || arrival.compareAndSet(theoretical, previous)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return le nombre de clés suivies
+     */
+    public int size() {
+        return arrivals.size();
+    }
+
+    /**
+     * Retire les clés dont le seau est plein, au plus une fois par intervalle et par un seul thread.
+     * Une demande concurrente sur une clé retirée peut être comptée sur l'ancien compteur et perdue :
+     * au pire une demande de plus est acceptée pour cette clé.
+     */
+    private void evictIdle(long now) {
+        long last = lastEviction.get();
+        if (now - last < EVICTION_INTERVAL_NANOS || !lastEviction.compareAndSet(last, now)) {
+            return;
+        }
+        arrivals.values().removeIf(arrival -> arrival.get() - now <= 0);
+    }
+}
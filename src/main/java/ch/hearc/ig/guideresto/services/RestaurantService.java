@@ -2,14 +2,24 @@ package ch.hearc.ig.guideresto.services;
 
 import ch.hearc.ig.guideresto.business.City;
 import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantRating;
+import ch.hearc.ig.guideresto.business.RestaurantSummary;
 import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.persistence.ConcurrentUpdateException;
+import ch.hearc.ig.guideresto.persistence.FetchPlan;
+import ch.hearc.ig.guideresto.persistence.Page;
 import ch.hearc.ig.guideresto.persistence.jpa.JpaUtils;
 import ch.hearc.ig.guideresto.persistence.mapper.RestaurantMapper;
+import ch.hearc.ig.guideresto.persistence.mapper.RestaurantRatingMapper;
 import ch.hearc.ig.guideresto.persistence.mapper.RestaurantTypeMapper;
 import java.util.List;
 
 public class RestaurantService {
+    /** Région du cache de requêtes des listes de restaurants (voir les requêtes nommées de Restaurant). */
+    private static final String RESTAURANT_QUERIES = "guideresto.query.restaurants";
     private final RestaurantMapper restaurantMapper = new RestaurantMapper();
+    private final RestaurantTypeMapper typeMapper = new RestaurantTypeMapper();
+    private final RestaurantRatingMapper ratingMapper = new RestaurantRatingMapper();
     private static RestaurantService instance;
 
     private RestaurantService(){
@@ -19,7 +29,7 @@ public class RestaurantService {
      * Singleton pattern pour obtenir une instance unique de RestaurantService
      * @return l'instance de RestaurantService
      */
-    public static RestaurantService getInstance() {
+    public static synchronized RestaurantService getInstance() {
         if (instance == null) {
             instance = new RestaurantService();
         }
@@ -28,19 +38,58 @@ public class RestaurantService {
 
     /**
      * Affiche une liste de tous les restaurants
-     * @return liste de tous les restaurants
+     * @return la vue résumée de tous les restaurants, triés par nom
      */
-    public List<Restaurant> getAllRestaurants() {
-        return restaurantMapper.findAll();
+    public List<RestaurantSummary> getAllRestaurants() {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findAllSummaries());
+    }
+
+    /**
+     * Récupérer une page de la liste des restaurants
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page, bornée par la taille maximale du mapper
+     * @return la page de résumés de restaurants, triés par nom
+     */
+    public Page<RestaurantSummary> getAllRestaurants(String cursor, int size) {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findSummaryPage(cursor, size));
+    }
+
+    /**
+     * Charger un restaurant avec son type et sa ville, sans ses évaluations
+     * @param id - l'identifiant du restaurant
+     * @return le restaurant, ou null s'il n'existe pas
+     */
+    public Restaurant getRestaurant(Integer id) {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findById(id, FetchPlan.SUMMARY));
+    }
+
+    /**
+     * Charger un restaurant pour l'afficher en détail : type, ville, évaluations complètes avec leurs notes et critères
+     * @param id - l'identifiant du restaurant
+     * @return le restaurant, ou null s'il n'existe pas
+     */
+    public Restaurant getRestaurantDetail(Integer id) {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findById(id, FetchPlan.DETAIL));
     }
 
     /**
      * Trouver des restaurants par leur nom
-     * @param name - le nom du restaurant
-     * @return la liste des restaurants trouvés
+     * @param name - une partie du nom du restaurant
+     * @return la vue résumée des restaurants trouvés
+     */
+    public List<RestaurantSummary> findRestaurantsByName(String name) {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findSummariesByName(name));
+    }
+
+    /**
+     * Trouver une page de restaurants par une partie de leur nom, sans tenir compte de la casse
+     * @param name - une partie du nom du restaurant
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page
+     * @return la page de résumés des restaurants trouvés, triés par nom
      */
-    public List<Restaurant> findRestaurantsByName(String name) {
-        return restaurantMapper.findByName(name);
+    public Page<RestaurantSummary> findRestaurantsByName(String name, String cursor, int size) {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findSummaryPageByName(name, cursor, size));
     }
 
     /**
@@ -59,33 +108,56 @@ public class RestaurantService {
     }
 
     /**
-    * Trouver des restaurants par une partie de nom de ville
-    * @param cityPart - partie du nom de la ville
-    * @return la liste des restaurants trouvés
+    * Trouver des restaurants par le début du nom de leur ville, sans tenir compte de la casse
+    * @param cityPart - début du nom de la ville
+    * @return la vue résumée des restaurants trouvés
      */
-    public List<Restaurant> findRestaurantsByCity(String cityPart) {
-        List<Restaurant> all = restaurantMapper.findAll();
-        all.removeIf(r -> !r.getAddress().getCity().getCityName().toLowerCase().contains(cityPart.toLowerCase()));
-        return all;
+    public List<RestaurantSummary> findRestaurantsByCity(String cityPart) {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findSummariesByCity(cityPart));
     }
 
     /**
-     * Trouver des restaurants par type
+     * Trouver une page de restaurants par le début du nom de leur ville, sans tenir compte de la casse
+     * @param cityPart - début du nom de la ville
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page
+     * @return la page de résumés des restaurants trouvés, triés par nom
+     */
+    public Page<RestaurantSummary> findRestaurantsByCity(String cityPart, String cursor, int size) {
+        return JpaUtils.inReadOnly(em -> restaurantMapper.findSummaryPageByCity(cityPart, cursor, size));
+    }
+
+    /**
+     * Trouver des restaurants par leur type. Un libellé exact est résolu par identifiant naturel (depuis le cache
+     * une fois le type connu) puis filtré par clé étrangère ; sinon, recherche par le début du libellé, sans tenir compte de la casse.
      * @param label - le type de restaurant
-     * @return la liste des restaurants trouvés
+     * @return la vue résumée des restaurants trouvés
      */
-    public List<Restaurant> findRestaurantsByType(String label) {
-        RestaurantTypeMapper typeMapper = new RestaurantTypeMapper();
-        List<RestaurantType> types = typeMapper.findByName(label);
+    public List<RestaurantSummary> findRestaurantsByType(String label) {
+        return JpaUtils.inReadOnly(em -> {
+            RestaurantType type = typeMapper.findByLabel(label);
+            return type != null ? restaurantMapper.findSummariesOfType(type) : restaurantMapper.findSummariesByType(label);
+        });
+    }
 
-        RestaurantType type = types.getFirst(); // prend le premier élément
-        List<Restaurant> all = restaurantMapper.findAll();
-        all.removeIf(r -> !r.getType().getId().equals(type.getId())); // filtre les restaurants
-        return all;
+    /**
+     * Trouver une page de restaurants par leur type, comme {@link #findRestaurantsByType(String)}
+     * @param label - le type de restaurant
+     * @param cursor - jeton de la page précédente, ou null pour la première page
+     * @param size - taille de la page
+     * @return la page de résumés des restaurants trouvés, triés par nom
+     */
+    public Page<RestaurantSummary> findRestaurantsByType(String label, String cursor, int size) {
+        return JpaUtils.inReadOnly(em -> {
+            RestaurantType type = typeMapper.findByLabel(label);
+            return type != null
+                    ? restaurantMapper.findSummaryPageOfType(type, cursor, size)
+                    : restaurantMapper.findSummaryPageByType(label, cursor, size);
+        });
     }
 
     /**
-     * Ajouter un nouveau restaurant
+     * Ajouter un nouveau restaurant, avec ses compteurs d'évaluations à zéro
      * @param name - le nom du restaurant
      * @param description - la description du restaurant
      * @param website - le site web du restaurant
@@ -97,29 +169,34 @@ public class RestaurantService {
     public Restaurant addRestaurant(String name, String description, String website,
                                     String street, City city, RestaurantType restaurantType) {
 
-        Restaurant restaurant = new Restaurant(null, name, description, website, street, city, restaurantType);
-
-        JpaUtils.inTransaction(em -> {
+        Restaurant created = JpaUtils.fromTransaction(em -> {
+            Restaurant restaurant = new Restaurant(null, name, description, website, street, city, restaurantType);
             restaurantMapper.create(restaurant, em);  // persiste avec l'EM courant
+            ratingMapper.create(new RestaurantRating(restaurant.getId()), em); // compteurs à zéro
+            return restaurant;
         });
-
-        return restaurant;
+        LeaderboardService.getInstance().place(created);
+        return created;
     }
 
     /**
-     * Mettre à jour un restaurant existant
+     * Mettre à jour un restaurant existant. La version du restaurant est mise à jour en retour.
      * @param restaurant - le restaurant à mettre à jour
      * @return true si la mise à jour a réussi, false sinon
+     * @throws ConcurrentUpdateException si le restaurant a été modifié ou supprimé depuis qu'il a été lu
      */
     public boolean updateRestaurant(Restaurant restaurant) {
         JpaUtils.inTransaction(em -> {
             restaurantMapper.update(restaurant, em);
         });
+        LeaderboardService.getInstance().place(restaurant); // nom, ville ou type modifiés
         return true;
     }
 
     /**
-     * Mettre à jour l'adresse d'un restaurant
+     * Mettre à jour l'adresse d'un restaurant.
+     * Seule l'adresse est modifiée : elle est réappliquée sur la dernière version du restaurant en cas de conflit.
+     * L'adresse et la version du restaurant passé en paramètre sont mises à jour en retour.
      * @param restaurant - le restaurant à mettre à jour
      * @param newStreet - la nouvelle rue
      * @param newCity - la nouvelle ville
@@ -127,9 +204,14 @@ public class RestaurantService {
      */
     public boolean updateRestaurantAddress(Restaurant restaurant, String newStreet, City newCity) {
         try {
-            JpaUtils.inTransaction(em -> {
-                restaurantMapper.updateAddress(restaurant, newStreet, newCity, em);
-            });
+            Restaurant updated = JpaUtils.updateWithRetry(Restaurant.class, restaurant.getId(),
+                    (em, current) -> restaurantMapper.updateAddress(current, newStreet, newCity, em));
+            if (updated == null) {
+                return false; // supprimé entre-temps
+            }
+            restaurant.setAddress(updated.getAddress());
+            restaurant.setVersion(updated.getVersion());
+            LeaderboardService.getInstance().place(restaurant);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -138,7 +220,7 @@ public class RestaurantService {
     }
 
     /**
-     * Supprimer un restaurant
+     * Supprimer un restaurant avec ses évaluations, ses notes et ses compteurs, par suppressions en masse
      * @param restaurant - le restaurant à supprimer
      * @return true si la suppression a réussi, false sinon
      */
@@ -147,8 +229,13 @@ public class RestaurantService {
 
         try {
             JpaUtils.inTransaction(em -> {
+                ratingMapper.deleteById(restaurant.getId(), em);
                 restaurantMapper.delete(restaurant, em);
             });
+            // après validation : listes de restaurants en cache, classements et likes du jour
+            JpaUtils.evictQueryRegion(RESTAURANT_QUERIES);
+            LeaderboardService.getInstance().remove(restaurant.getId());
+            DuplicateLikeService.getInstance().forget(restaurant.getId());
             return true;
         } catch (Exception e) {
             e.printStackTrace();
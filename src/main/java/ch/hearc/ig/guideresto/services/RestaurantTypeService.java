@@ -12,7 +12,7 @@ public class RestaurantTypeService {
     private RestaurantTypeService() {
     }
 
-    public static RestaurantTypeService getInstance() {
+    public static synchronized RestaurantTypeService getInstance() {
         if (instance == null) {
             instance = new RestaurantTypeService();
         }
@@ -20,18 +20,16 @@ public class RestaurantTypeService {
     }
 
     public List<RestaurantType> getAllTypes() {
-        return typeMapper.findAll();
+        return JpaUtils.inReadOnly(em -> typeMapper.findAll());
     }
 
     public RestaurantType addType(String label, String description) {
-        RestaurantType type = new RestaurantType(null, label, description);
-        JpaUtils.inTransaction(em -> {
-            typeMapper.create(type, em);
-        });
-        return type;
+        return JpaUtils.fromTransaction(em ->
+                typeMapper.create(new RestaurantType(null, label, description), em)
+        );
     }
 
     public List<RestaurantType> findByLabel(String label) {
-        return typeMapper.findByName(label);
+        return JpaUtils.inReadOnly(em -> typeMapper.findByName(label));
     }
 }
@@ -0,0 +1,191 @@
+package ch.hearc.ig.guideresto.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Tampon d'écriture différée : les objets soumis sont placés dans une file bornée, puis écrits par un thread
+ * en arrière-plan par lots, dans une seule transaction par lot (validation groupée). Un lot part dès qu'il est
+ * plein ou que son plus ancien objet a attendu le délai maximal.
+ * <p>
+ * Quand la file est pleine, l'appelant attend qu'une place se libère (contre-pression), au plus le délai
+ * d'admission ; au-delà, la soumission est refusée. Chaque soumission renvoie un futur, complété une fois
+ * l'objet validé en base, ou en erreur si son écriture a échoué. Si un lot échoue, ses objets sont réécrits
+ * un par un, pour qu'un objet invalide ne fasse pas échouer les autres.
+ *
+ * @param <T> type des objets soumis
+ * @param <R> type des objets écrits, renvoyés par les futurs
+ */
+public class WriteBehindBuffer<T, R> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindBuffer.class);
+    /** Attente maximale du thread d'écriture avant de vérifier si le tampon a été fermé. */
+    private static final long CLOSE_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final BlockingQueue<Pending<T, R>> queue;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final long admissionTimeoutNanos;
+    private final Function<List<T>, List<R>> writer;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * @param name - nom du thread d'écriture
+     * @param capacity - nombre maximal d'objets en attente d'écriture
+     * @param batchSize - nombre maximal d'objets écrits par transaction
+     * @param maxDelay - attente maximale d'un objet avant l'écriture de son lot
+     * @param admissionTimeout - attente maximale d'une place dans la file pleine avant de refuser une soumission
+     * @param writer - écriture d'un lot dans une transaction ; renvoie les objets écrits, dans l'ordre du lot
+     */
+    public WriteBehindBuffer(String name, int capacity, int batchSize, Duration maxDelay, Duration admissionTimeout,
+                             Function<List<T>, List<R>> writer) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("La capacité et la taille de lot doivent être positives");
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.admissionTimeoutNanos = admissionTimeout.toNanos();
+        this.writer = writer;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true); // l'arrêt passe par close(), qui attend la fin de l'écriture
+        this.worker.start();
+    }
+
+    /**
+     * Soumettre un objet à écrire. Attend une place si la file est pleine, au plus le délai d'admission.
+     * @param item - objet à écrire
+     * @return un futur complété par l'objet écrit une fois validé en base ; en erreur avec une
+     * {@link RejectedExecutionException} si le tampon est fermé ou reste plein
+     */
+    public CompletableFuture<R> submit(T item) {
+        CompletableFuture<R> ack = new CompletableFuture<>();
+        if (closed) {
+            ack.completeExceptionally(closedException());
+            return ack;
+        }
+        Pending<T, R> pending = new Pending<>(item, ack);
+        try {
+            if (!queue.offer(pending, admissionTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                ack.completeExceptionally(new RejectedExecutionException("File d'écriture pleine"));
+                return ack;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ack.completeExceptionally(e);
+            return ack;
+        }
+        // fermeture pendant l'ajout : le thread d'écriture a pu s'arrêter sans voir l'objet.
+        // Celui qui retire l'objet de la file en est responsable : s'il y est encore, il est refusé ici.
+        if (closed && queue.remove(pending)) {
+            ack.completeExceptionally(closedException());
+        }
+        return ack;
+    }
+
+    /**
+     * @return le nombre d'objets en attente d'écriture
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Fermer le tampon : les nouvelles soumissions sont refusées, les objets en attente sont écrits.
+     * Le thread d'écriture n'est pas interrompu (une interruption ferait échouer l'obtention d'une connexion
+     * ou l'attente avant une nouvelle tentative) : il remarque la fermeture à sa prochaine attente.
+     * @param timeout - attente maximale de la fin des écritures
+     */
+    public void close(Duration timeout) {
+        closed = true;
+        try {
+            worker.join(timeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            LOG.warn("Tampon d'écriture {} non vidé à la fermeture : {} objets en attente", worker.getName(), queue.size());
+            return;
+        }
+        // objets ajoutés entre le dernier passage du thread et son arrêt
+        for (Pending<T, R> pending = queue.poll(); pending != null; pending = queue.poll()) {
+            pending.ack().completeExceptionally(closedException());
+        }
+    }
+
+    private void run() {
+        List<Pending<T, R>> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                fill(batch);
+            } catch (InterruptedException e) {
+                // la fermeture ne passe pas par une interruption : on continue, le drapeau est déjà levé
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            } else if (closed && queue.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remplit le lot : attend le premier objet (par attentes courtes, pour remarquer la fermeture), puis les suivants
+     * jusqu'à remplir le lot ou atteindre le délai maximal depuis l'arrivée du premier. Une fois le tampon fermé,
+     * prend les objets en attente sans plus attendre.
+     */
+    private void fill(List<Pending<T, R>> batch) throws InterruptedException {
+        if (closed) {
+            queue.drainTo(batch, batchSize);
+            return;
+        }
+        Pending<T, R> first = queue.poll(CLOSE_CHECK_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+        if (first == null) return;
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) continue;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || closed) return;
+            Pending<T, R> next = queue.poll(Math.min(remaining, CLOSE_CHECK_INTERVAL_NANOS), TimeUnit.NANOSECONDS);
+            if (next != null) batch.add(next);
+        }
+    }
+
+    private static RejectedExecutionException closedException() {
+        return new RejectedExecutionException("Tampon d'écriture fermé");
+    }
+
+    private void write(List<Pending<T, R>> batch) {
+        try {
+            List<R> written = writer.apply(batch.stream().map(Pending::item).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).ack().complete(written.get(i));
+            }
+        } catch (RuntimeException batchFailure) {
+            LOG.warn("Échec de l'écriture d'un lot de {} objets, réécriture un par un : {}", batch.size(), batchFailure.getMessage());
+            for (Pending<T, R> pending : batch) {
+                try {
+                    pending.ack().complete(writer.apply(List.of(pending.item())).get(0));
+                } catch (RuntimeException e) {
+                    pending.ack().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private record Pending<T, R>(T item, CompletableFuture<R> ack) {
+    }
+}